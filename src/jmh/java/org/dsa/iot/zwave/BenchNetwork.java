@@ -0,0 +1,122 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.NodeBuilder;
+import org.dsa.iot.dslink.node.value.Value;
+import org.zwave4j.NotificationType;
+import org.zwave4j.ValueId;
+
+import java.util.List;
+
+//a full size simulated network for the benchmarks
+//a real ZWaveConn on a SimulatedManager with 231 devices of 40 values each; the devices are added
+//like NODE_ADDED does and their values through ZWaveDevice.addValue, the connection itself is not
+//started so no notification is delivered behind the benchmark's back
+public class BenchNetwork {
+
+    public static final int DEVICES = SimulatedManager.MAX_NODES;
+    public static final int VALUES = 40;
+
+    private final Node connNode;
+    private final ZWaveConn conn;
+    private final SimulatedManager manager;
+    private final List<ValueId> ids;
+    private ValuePoint[] points;
+
+    public BenchNetwork() {
+        this(true);
+    }
+
+    //with values false only the devices are added, see addValues
+    public BenchNetwork(boolean values) {
+        Node root = new Node("zwave", null, null);
+        NodeBuilder b = root.createChild("bench");
+        b.setAttribute("simulated", new Value(true));
+        b.setAttribute("sim nodes", new Value(DEVICES));
+        b.setAttribute("sim values", new Value(VALUES));
+        b.setAttribute("sim change rate", new Value(0));
+        b.setAttribute("sim sleeping", new Value(0));
+        connNode = b.build();
+        conn = new ZWaveConn(ZWaveLink.detached(root), connNode);
+        manager = (SimulatedManager) conn.getManager();
+        ids = manager.getValueIds();
+        for (short nodeId = SimulatedManager.CONTROLLER_NODE + 1; nodeId <= DEVICES + 1; nodeId++) {
+            addDevice(nodeId);
+        }
+        if (values) {
+            addValues(events(NotificationType.VALUE_ADDED));
+        }
+    }
+
+    private void addDevice(short nodeId) {
+        String nid = String.valueOf(nodeId);
+        NodeBuilder b = connNode.createChild(nid);
+        b.setDisplayName(manager.getNodeProductName(manager.getHomeId(), nodeId) + "-" + nid);
+        b.setAttribute("nodeId", new Value(nid));
+        b.setAttribute("pathName", new Value(nid));
+        ZWaveDevice zwd = new ZWaveDevice(connNode, b.build(), conn, nodeId);
+        conn.getDevices().put(nodeId, zwd);
+        zwd.initHealth();
+    }
+
+    //deliver VALUE_ADDED notifications to their devices, as the interview does
+    public void addValues(ZWaveEvent[] events) {
+        for (ZWaveEvent event : events) {
+            conn.getDevices().get(event.getNodeId()).addValue(event);
+        }
+        points = null;
+    }
+
+    public ZWaveConn getConn() {
+        return conn;
+    }
+
+    public SimulatedManager getManager() {
+        return manager;
+    }
+
+    public Node getRoot() {
+        return connNode;
+    }
+
+    public ZWaveDevice getDevice(short nodeId) {
+        return conn.getDevices().get(nodeId);
+    }
+
+    //the data points the devices built, in value order
+    public ValuePoint[] getPoints() {
+        if (points == null) {
+            ValuePoint[] built = new ValuePoint[ids.size()];
+            for (int i = 0; i < built.length; i++) {
+                built[i] = conn.getValuePoints().get(ValuePoint.key(ids.get(i)));
+            }
+            points = built;
+        }
+        return points;
+    }
+
+    public LongMap<ValuePoint> getValuePoints() {
+        return conn.getValuePoints();
+    }
+
+    //a notification of the given type for every simulated value
+    public ZWaveEvent[] events(NotificationType type) {
+        ZWaveEvent[] events = new ZWaveEvent[ids.size()];
+        for (int i = 0; i < events.length; i++) {
+            ValueId id = ids.get(i);
+            events[i] = new ZWaveEvent(type, manager.getHomeId(), id.getNodeId(), id,
+                    (short) 0, (short) 0, (short) 0, (short) 0, (short) 0, (short) 0, null);
+        }
+        return events;
+    }
+
+    //a VALUE_CHANGED notification for every data point
+    public ZWaveEvent[] valueChanges() {
+        return events(NotificationType.VALUE_CHANGED);
+    }
+
+    //stop the simulator's thread
+    public void shutdown() {
+        manager.shutdown();
+    }
+}
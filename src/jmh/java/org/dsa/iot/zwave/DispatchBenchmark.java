@@ -0,0 +1,61 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//throughput of the notification queue: the OpenZWave thread offering value changes while
+//the dispatcher thread resolves their data points
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"0", "50"})
+    public long coalesceWindow;
+
+    private ZWaveEvent[] events;
+    private NotificationDispatcher dispatcher;
+    private int next;
+
+    @Setup
+    public void setup() {
+        final BenchNetwork network = new BenchNetwork();
+        events = network.valueChanges();
+        dispatcher = new NotificationDispatcher("bench", NotificationDispatcher.DEFAULT_CAPACITY,
+                NotificationDispatcher.OverflowPolicy.BLOCK, new Handler<ZWaveEvent>() {
+                    @Override
+                    public void handle(ZWaveEvent event) {
+                        network.getValuePoints().get(ValuePoint.key(event.getValueId()));
+                    }
+                });
+        dispatcher.setCoalesceWindow(coalesceWindow);
+        dispatcher.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Benchmark
+    public void offer() {
+        dispatcher.offer(events[next]);
+        next = next + 1 == events.length ? 0 : next + 1;
+    }
+}
@@ -0,0 +1,48 @@
+package org.dsa.iot.zwave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zwave4j.NotificationType;
+
+import java.util.concurrent.TimeUnit;
+
+//time ZWaveDevice.addValue takes for the VALUE_ADDED notifications of a full size network,
+//as after a restart; every run starts from a network with its devices but none of their values
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InterviewBenchmark {
+
+    private BenchNetwork network;
+    private ZWaveEvent[] events;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        network = new BenchNetwork(false);
+        events = network.events(NotificationType.VALUE_ADDED);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        network.shutdown();
+    }
+
+    @Benchmark
+    public BenchNetwork addValues() {
+        network.addValues(events);
+        return network;
+    }
+}
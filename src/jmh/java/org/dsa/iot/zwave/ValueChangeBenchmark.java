@@ -0,0 +1,61 @@
+package org.dsa.iot.zwave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//latency of ZWaveDevice.changeValue handling one VALUE_CHANGED notification on a full size network
+//changed picks whether the simulator has a new reading or the one already published
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ValueChangeBenchmark {
+
+    @Param({"true", "false"})
+    public boolean subscribed;
+
+    @Param({"true", "false"})
+    public boolean changed;
+
+    private BenchNetwork network;
+    private ZWaveEvent[] events;
+    private int next;
+
+    @Setup
+    public void setup() {
+        network = new BenchNetwork();
+        events = network.valueChanges();
+        for (ValuePoint point : network.getPoints()) {
+            point.setSubscribed(subscribed);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        network.shutdown();
+    }
+
+    @Benchmark
+    public void changeValue() {
+        ZWaveEvent event = events[next];
+        next = next + 1 == events.length ? 0 : next + 1;
+        if (changed) {
+            network.getManager().change(event.getValueId());
+        }
+        network.getDevice(event.getNodeId()).changeValue(event);
+    }
+}
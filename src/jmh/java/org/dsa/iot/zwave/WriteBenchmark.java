@@ -0,0 +1,77 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.value.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//cost of turning a set-point write into a queued command and of sending it
+//the queue is not started, so repeated writes to the same points exercise the merge path
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+    private ValuePoint[] points;
+    private SimulatedManager manager;
+    private Value[] values;
+    private CommandQueue queue;
+    private int next;
+    private double reading;
+
+    @Setup
+    public void setup() {
+        BenchNetwork network = new BenchNetwork();
+        points = network.getPoints();
+        manager = network.getManager();
+        queue = new CommandQueue("bench", manager, points.length);
+        //a valid value for every value type the simulated network uses
+        values = new Value[org.zwave4j.ValueType.values().length];
+        values[org.zwave4j.ValueType.BOOL.ordinal()] = new Value(true);
+        values[org.zwave4j.ValueType.BYTE.ordinal()] = new Value(50);
+        values[org.zwave4j.ValueType.DECIMAL.ordinal()] = new Value(21.5);
+        values[org.zwave4j.ValueType.INT.ordinal()] = new Value(1200);
+        values[org.zwave4j.ValueType.LIST.ordinal()] = new Value("Heat");
+        values[org.zwave4j.ValueType.SHORT.ordinal()] = new Value(7);
+    }
+
+    @Benchmark
+    public boolean submit() {
+        ValuePoint point = points[next];
+        next = next + 1 == points.length ? 0 : next + 1;
+        return queue.submit(point, new Value(reading++));
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    //the typed setter of a point, answered by the simulated network
+    @Benchmark
+    public boolean write() {
+        ValuePoint point = points[next];
+        next = next + 1 == points.length ? 0 : next + 1;
+        return point.write(manager, values[point.getType().ordinal()]);
+    }
+
+    @Benchmark
+    public ValueWriter resolveWriter() {
+        ValuePoint point = points[next];
+        next = next + 1 == points.length ? 0 : next + 1;
+        return ValueWriter.forType(point.getType());
+    }
+}
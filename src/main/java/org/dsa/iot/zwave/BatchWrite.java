@@ -0,0 +1,301 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.dsa.iot.dslink.util.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//a batch of writes from the connection's "Set Values" action
+//the whole batch is resolved and validated before anything is queued; the valid writes are
+//then handed to the command queue in one step, ordered by node and endpoint so the commands
+//for a device leave back to back instead of interleaved with the rest of the batch
+public class BatchWrite {
+
+    //outcome of a single write
+    public enum Status {
+        QUEUED, CONFIRMED, UNCONFIRMED, PARKED, SUPERSEDED, QUEUE_FULL, INVALID
+    }
+
+    //a single (device, value, new value) entry of the batch
+    public static class Item {
+        private final int row;
+        private final String device;
+        private final String name;
+        private final Object raw;
+        private ValuePoint point;
+        private Value value;
+        private Status status;
+        private String detail;
+        private long queued; //nanoTime the write was queued
+
+        private Item(int row, String device, String name, Object raw) {
+            this.row = row;
+            this.device = device;
+            this.name = name;
+            this.raw = raw;
+        }
+
+        private void fail(String detail) {
+            this.status = Status.INVALID;
+            this.detail = detail;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return value;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        //milliseconds from queueing the write to the reading that confirmed it, -1 if not confirmed
+        public double getLatency() {
+            if (status != Status.CONFIRMED) {
+                return -1;
+            }
+            return (point.getWriteConfirmed() - queued) / 1e6;
+        }
+    }
+
+    private final List<Item> items = new ArrayList<>();
+    private long validateTime;
+    private long submitTime;
+
+    //parse a JSON list of objects ({"device", "value", "newValue"}) or of [device, value, new value] rows
+    public static BatchWrite parse(JsonArray rows) {
+        BatchWrite batch = new BatchWrite();
+        int row = 0;
+        for (Object o : rows) {
+            row++;
+            if (o instanceof JsonObject) {
+                JsonObject obj = (JsonObject) o;
+                batch.items.add(new Item(row, text(obj.get("device")), text(obj.get("value")),
+                        obj.get("newValue")));
+            } else if (o instanceof JsonArray && ((JsonArray) o).size() == 3) {
+                JsonArray arr = (JsonArray) o;
+                batch.items.add(new Item(row, text(arr.get(0)), text(arr.get(1)), arr.get(2)));
+            } else {
+                Item item = new Item(row, null, null, null);
+                item.fail("expected {device, value, newValue}");
+                batch.items.add(item);
+            }
+        }
+        return batch;
+    }
+
+    private static String text(Object o) {
+        if (o instanceof Number) {
+            return String.valueOf(((Number) o).intValue());
+        }
+        return o == null ? null : o.toString();
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    //resolve the devices and data points and check every new value, returns the number of invalid items
+    public int validate(ZWaveManager manager, DeviceRegistry devices) {
+        long start = System.nanoTime();
+        Map<String, ZWaveDevice> byName = new HashMap<>();
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            byName.put(String.valueOf(zwd.getNodeId()), zwd);
+            if (zwd.getDisplayName() != null) {
+                byName.put(zwd.getDisplayName(), zwd);
+            }
+            byName.put(zwd.getName(), zwd);
+        }
+        Map<Long, Item> last = new HashMap<>();
+        int invalid = 0;
+        for (Item item : items) {
+            if (item.status == null) {
+                resolve(item, manager, byName);
+            }
+            if (item.status == Status.INVALID) {
+                invalid++;
+                continue;
+            }
+            //a later write to the same value wins, as it would in the queue
+            Item earlier = last.put(item.point.getKey(), item);
+            if (earlier != null) {
+                earlier.status = Status.SUPERSEDED;
+                earlier.detail = "replaced by row " + item.row;
+            }
+        }
+        validateTime = System.nanoTime() - start;
+        return invalid;
+    }
+
+    private static void resolve(Item item, ZWaveManager manager, Map<String, ZWaveDevice> devices) {
+        if (item.device == null || item.name == null) {
+            item.fail("device and value are required");
+            return;
+        }
+        ZWaveDevice zwd = devices.get(item.device);
+        if (zwd == null) {
+            item.fail("unknown device");
+            return;
+        }
+        ValuePoint point = zwd.getPoints().get(item.name);
+        if (point == null) {
+            item.fail("unknown value");
+            return;
+        }
+        item.point = point;
+        item.value = toValue(point, item.raw);
+        if (item.value == null) {
+            item.fail("missing new value");
+            return;
+        }
+        String error = ValueWriter.forType(point.getType()).check(manager, point.getValueId(), item.value);
+        if (error != null) {
+            item.fail(error);
+        }
+    }
+
+    //convert the JSON value, text is accepted for numbers and booleans
+    static Value toValue(ValuePoint point, Object raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (raw instanceof String) {
+            String s = ((String) raw).trim();
+            switch (point.getType()) {
+                case BOOL:
+                    if ("true".equalsIgnoreCase(s) || "1".equals(s)) {
+                        return new Value(true);
+                    } else if ("false".equalsIgnoreCase(s) || "0".equals(s)) {
+                        return new Value(false);
+                    }
+                    break;
+                case BYTE:
+                case DECIMAL:
+                case INT:
+                case SHORT:
+                    try {
+                        return new Value(Double.parseDouble(s));
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                default:
+                    break;
+            }
+            return new Value((String) raw);
+        } else if (raw instanceof Boolean) {
+            return new Value((Boolean) raw);
+        } else if (raw instanceof Number) {
+            return new Value((Number) raw);
+        } else if (raw instanceof JsonArray) {
+            return new Value((JsonArray) raw);
+        }
+        return new Value(raw.toString());
+    }
+
+    //queue the valid writes grouped by node and endpoint, in batch order within a group
+    public void submit(CommandQueue queue) {
+        long start = System.nanoTime();
+        List<Item> valid = new ArrayList<>();
+        for (Item item : items) {
+            if (item.status == null) {
+                valid.add(item);
+            }
+        }
+        Collections.sort(valid, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                int c = compare(a.point.getValueId().getNodeId() & 0xFF, b.point.getValueId().getNodeId() & 0xFF);
+                if (c == 0) {
+                    c = compare(a.point.getValueId().getInstance() & 0xFF, b.point.getValueId().getInstance() & 0xFF);
+                }
+                return c != 0 ? c : compare(a.row, b.row);
+            }
+
+            private int compare(int x, int y) {
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        List<ValuePoint> points = new ArrayList<>(valid.size());
+        List<Value> values = new ArrayList<>(valid.size());
+        for (Item item : valid) {
+            points.add(item.point);
+            values.add(item.value);
+        }
+        long now = System.nanoTime();
+        boolean[] queued = queue.submitAll(points, values);
+        for (int i = 0; i < queued.length; i++) {
+            Item item = valid.get(i);
+            if (!queued[i]) {
+                item.status = Status.QUEUE_FULL;
+            } else if (queue.isParked(item.point.getValueId().getNodeId())) {
+                item.status = Status.PARKED;
+                item.detail = queue.isParked(item.point.getValueId().getNodeId(), CommandQueue.PARK_DEAD)
+                        ? "sent when the device is reachable" : "sent when the device wakes up";
+                item.queued = now;
+            } else {
+                item.status = Status.QUEUED;
+                item.queued = now;
+            }
+        }
+        submitTime = System.nanoTime() - start;
+    }
+
+    //wait up to timeout milliseconds for readings that confirm the queued writes
+    public void await(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            boolean open = false;
+            for (Item item : items) {
+                if (item.status == Status.QUEUED || item.status == Status.PARKED) {
+                    if (item.point.getWriteConfirmed() - item.queued > 0) {
+                        item.status = Status.CONFIRMED;
+                        item.detail = null;
+                    } else {
+                        open = true;
+                    }
+                }
+            }
+            if (!open || System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+        for (Item item : items) {
+            if (item.status == Status.QUEUED) {
+                item.status = Status.UNCONFIRMED;
+            }
+        }
+    }
+
+    //nanoseconds spent resolving and checking the batch
+    public long getValidateTime() {
+        return validateTime;
+    }
+
+    //nanoseconds spent ordering and queueing the batch
+    public long getSubmitTime() {
+        return submitTime;
+    }
+}
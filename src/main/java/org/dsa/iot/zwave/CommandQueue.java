@@ -0,0 +1,316 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//outbound write queue of a controller
+//pending writes to the same value are collapsed (last write wins) and a sender thread
+//hands them to OpenZWave no faster than the controller and per-node rate limits allow
+//writes to a parked node (dead, asleep) stay queued without holding up the other nodes
+//refreshes of a sleeping node wait in the same queue, so a node that wakes up gets the
+//latest write or refresh of each of its values and nothing older
+public class CommandQueue {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(CommandQueue.class);
+    }
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final double DEFAULT_RATE = 20; //commands per second for the controller
+    public static final long DEFAULT_NODE_INTERVAL = 100; //milliseconds between commands to a node
+    //reasons a node is parked, a node is sent to again once all of them are cleared
+    public static final int PARK_DEAD = 1;
+    public static final int PARK_ASLEEP = 2;
+
+    //a write waiting to be sent, the value is replaced when the point is written again
+    //a null value asks the device for a fresh reading instead
+    private static class PendingWrite {
+        private final ValuePoint point;
+        private Value value;
+
+        private PendingWrite(ValuePoint point, Value value) {
+            this.point = point;
+            this.value = value;
+        }
+    }
+
+    private final ZWaveManager manager;
+    private final String name;
+    private final int capacity;
+    private final Map<Long, PendingWrite> pending = new LinkedHashMap<>();
+    private final long[] lastSent = new long[256]; //nanoTime of the last command per node id
+    private final byte[] parked = new byte[256]; //reasons the writes to a node id are held back
+    private long nextSend; //earliest nanoTime the controller may send again
+    private long controllerSpacing; //nanoseconds
+    private long nodeSpacing; //nanoseconds
+    private boolean running;
+    private Thread thread;
+
+    private long merged;
+    private long dropped;
+    private long sent;
+    private long rejected;
+    private long refreshes;
+
+    public CommandQueue(String name, ZWaveManager manager, int capacity) {
+        this.name = name;
+        this.manager = manager;
+        this.capacity = capacity;
+        //nanoTime has an arbitrary origin, start as if nothing was sent for a day
+        long idle = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+        Arrays.fill(lastSent, idle);
+        nextSend = idle;
+        setLimits(DEFAULT_RATE, DEFAULT_NODE_INTERVAL);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, "zwave-writes-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        pending.clear();
+        notifyAll();
+        thread = null;
+    }
+
+    //queue a user write, returns false when the queue is full and the write was dropped
+    public synchronized boolean submit(ValuePoint point, Value value) {
+        Long key = point.getKey();
+        PendingWrite write = pending.get(key);
+        if (write != null) {
+            write.value = value;
+            merged++;
+            return true;
+        }
+        if (pending.size() >= capacity) {
+            dropped++;
+            return false;
+        }
+        pending.put(key, new PendingWrite(point, value));
+        notifyAll();
+        return true;
+    }
+
+    //queue a request for a fresh reading, a pending write to the value makes it redundant
+    public synchronized boolean submitRefresh(ValuePoint point) {
+        Long key = point.getKey();
+        if (pending.containsKey(key)) {
+            merged++;
+            return true;
+        }
+        if (pending.size() >= capacity) {
+            dropped++;
+            return false;
+        }
+        pending.put(key, new PendingWrite(point, null));
+        notifyAll();
+        return true;
+    }
+
+    //queue a batch of user writes in the given order under a single lock
+    //returns for each write whether it was queued, writes beyond the free capacity are dropped
+    public synchronized boolean[] submitAll(List<ValuePoint> points, List<Value> values) {
+        boolean[] queued = new boolean[points.size()];
+        for (int i = 0; i < queued.length; i++) {
+            ValuePoint point = points.get(i);
+            PendingWrite write = pending.get(point.getKey());
+            if (write != null) {
+                write.value = values.get(i);
+                merged++;
+                queued[i] = true;
+            } else if (pending.size() < capacity) {
+                pending.put(point.getKey(), new PendingWrite(point, values.get(i)));
+                queued[i] = true;
+            } else {
+                dropped++;
+            }
+        }
+        notifyAll();
+        return queued;
+    }
+
+    //sender loop, runs on the queue's own thread
+    private void send() {
+        while (true) {
+            PendingWrite write;
+            synchronized (this) {
+                write = null;
+                while (running && write == null) {
+                    long now = System.nanoTime();
+                    long wait = nextSend - now;
+                    if (pending.isEmpty()) {
+                        wait = TimeUnit.SECONDS.toNanos(1);
+                    } else if (wait <= 0) {
+                        wait = Long.MAX_VALUE;
+                        //oldest write whose node is not within its own spacing
+                        Iterator<PendingWrite> it = pending.values().iterator();
+                        while (it.hasNext()) {
+                            PendingWrite w = it.next();
+                            if (parked[w.point.getValueId().getNodeId() & 0xFF] != 0) {
+                                continue;
+                            }
+                            long nodeWait = lastSent[w.point.getValueId().getNodeId() & 0xFF] + nodeSpacing - now;
+                            if (nodeWait <= 0) {
+                                it.remove();
+                                write = w;
+                                break;
+                            }
+                            wait = Math.min(wait, nodeWait);
+                        }
+                    }
+                    if (write == null) {
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait(this, Math.max(wait, 1000000));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    } else {
+                        lastSent[write.point.getValueId().getNodeId() & 0xFF] = now;
+                        nextSend = now + controllerSpacing;
+                        //refreshes are not counted as writes
+                        if (write.value == null) {
+                            refreshes++;
+                        } else {
+                            sent++;
+                        }
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            try {
+                if (write.value == null) {
+                    manager.refreshValue(write.point.getValueId());
+                    continue;
+                }
+                write.point.markWriteSent(System.nanoTime());
+                if (!write.point.write(manager, write.value)) {
+                    synchronized (this) {
+                        rejected++;
+                    }
+                    LOGGER.warn("Value not accepted - " + write.point.getValueId().getNodeId()
+                            + ", " + write.point.getName());
+                    write.point.revert();
+                }
+            } catch (Exception e) {
+                LOGGER.error("Error sending value to {}", write.point.getName(), e);
+                if (write.value != null) {
+                    write.point.revert();
+                }
+            }
+        }
+    }
+
+    //hold back (or release) the writes to a node for one reason (PARK_DEAD, PARK_ASLEEP)
+    public synchronized void setParked(short nodeId, int reason, boolean park) {
+        int id = nodeId & 0xFF;
+        parked[id] = (byte) (park ? parked[id] | reason : parked[id] & ~reason);
+        notifyAll();
+    }
+
+    public synchronized boolean isParked(short nodeId) {
+        return parked[nodeId & 0xFF] != 0;
+    }
+
+    //whether the writes to a node are held back for the given reason
+    public synchronized boolean isParked(short nodeId, int reason) {
+        return (parked[nodeId & 0xFF] & reason) != 0;
+    }
+
+    //writes waiting for a parked node, of all nodes or of one (nodeId 0)
+    public synchronized int getParked(short nodeId) {
+        int count = 0;
+        for (PendingWrite w : pending.values()) {
+            int id = w.point.getValueId().getNodeId() & 0xFF;
+            if (parked[id] != 0 && (nodeId == 0 || id == (nodeId & 0xFF))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //value of the write waiting for a point, null if there is none
+    public synchronized Value getPendingValue(ValuePoint point) {
+        PendingWrite w = pending.get(point.getKey());
+        return w != null ? w.value : null;
+    }
+
+    //commands (writes and refreshes) waiting for each parked node id, in a single pass
+    public synchronized void getParked(int[] counts) {
+        Arrays.fill(counts, 0);
+        for (PendingWrite w : pending.values()) {
+            int id = w.point.getValueId().getNodeId() & 0xFF;
+            if (parked[id] != 0) {
+                counts[id]++;
+            }
+        }
+    }
+
+    //commands per second for the whole controller, milliseconds between commands to a node
+    public synchronized void setLimits(double rate, long nodeInterval) {
+        controllerSpacing = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        nodeSpacing = TimeUnit.MILLISECONDS.toNanos(Math.max(0, nodeInterval));
+        notifyAll();
+    }
+
+    public synchronized double getRate() {
+        return controllerSpacing > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) controllerSpacing : 0;
+    }
+
+    public synchronized long getNodeInterval() {
+        return TimeUnit.NANOSECONDS.toMillis(nodeSpacing);
+    }
+
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getMerged() {
+        return merged;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    //user writes sent, refreshes are counted by getRefreshes
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    //refreshes queued for sleeping nodes and sent, not counted as writes
+    public synchronized long getRefreshes() {
+        return refreshes;
+    }
+}
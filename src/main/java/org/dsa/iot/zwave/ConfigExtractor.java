@@ -0,0 +1,159 @@
+package org.dsa.iot.zwave;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+//extracts the OpenZWave device configuration from the link's jar
+//a manifest next to the extracted files records the jar it came from and the CRC of every
+//entry, so an unchanged jar costs a single file read and an upgraded jar only rewrites the
+//entries that actually changed
+public class ConfigExtractor {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(ConfigExtractor.class);
+    }
+
+    private static final String PREFIX = "config/";
+    private static final String MANIFEST = ".manifest";
+    private static final String STAMP = ".stamp";
+
+    private final File jar;
+    private final File basePath;
+
+    public ConfigExtractor(File jar, File basePath) {
+        this.jar = jar;
+        this.basePath = basePath;
+    }
+
+    //bring basePath up to date with the jar, returns the number of files written
+    public int extract() throws IOException {
+        Properties manifest = readManifest();
+        String stamp = jar.length() + ":" + jar.lastModified();
+        if (stamp.equals(manifest.getProperty(STAMP))) {
+            return 0;
+        }
+        if (!(basePath.exists() || basePath.mkdirs())) {
+            throw new IOException("Failed to create config dir");
+        }
+
+        int written = 0;
+        try (ZipFile zf = new ZipFile(jar)) {
+            Map<String, String> current = new HashMap<>();
+            List<ZipEntry> changed = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zf.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith(PREFIX)) {
+                    continue;
+                }
+                name = name.substring(PREFIX.length());
+                String crc = Long.toHexString(entry.getCrc()) + ":" + entry.getSize();
+                current.put(name, crc);
+                if (!crc.equals(manifest.getProperty(name)) || !new File(basePath, name).exists()) {
+                    changed.add(entry);
+                }
+            }
+
+            copy(zf, changed);
+            written = changed.size();
+
+            //files that were extracted from an older jar but are no longer shipped
+            for (String name : manifest.stringPropertyNames()) {
+                if (!name.equals(STAMP) && !current.containsKey(name)) {
+                    Files.deleteIfExists(new File(basePath, name).toPath());
+                }
+            }
+
+            Properties updated = new Properties();
+            updated.putAll(current);
+            updated.setProperty(STAMP, stamp);
+            writeManifest(updated);
+        }
+        return written;
+    }
+
+    //copy the entries in parallel, ZipFile supports concurrent readers
+    private void copy(final ZipFile zf, List<ZipEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(entries.size(), Math.max(1, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final ZipEntry entry : entries) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        Path target = new File(basePath, entry.getName().substring(PREFIX.length())).toPath();
+                        Files.createDirectories(target.getParent());
+                        try (InputStream is = zf.getInputStream(entry)) {
+                            Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Properties readManifest() {
+        Properties props = new Properties();
+        File f = new File(basePath, MANIFEST);
+        if (f.exists()) {
+            try (InputStream is = Files.newInputStream(f.toPath())) {
+                props.load(is);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read {}, extracting all config files", f.getAbsolutePath());
+                props.clear();
+            }
+        }
+        return props;
+    }
+
+    //written last and atomically, an interrupted extraction is redone on the next start
+    private void writeManifest(Properties props) throws IOException {
+        Path target = new File(basePath, MANIFEST).toPath();
+        Path tmp = new File(basePath, MANIFEST + ".tmp").toPath();
+        try (OutputStream os = Files.newOutputStream(tmp)) {
+            props.store(os, null);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,117 @@
+package org.dsa.iot.zwave;
+
+import org.zwave4j.NotificationType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//performance counters of a connection
+//updated on the dispatcher and write threads without locks or allocation, read once a
+//second when the Metrics nodes are published
+public class ConnMetrics {
+
+    private static final NotificationType[] TYPES = NotificationType.values();
+
+    private final AtomicLongArray notifications = new AtomicLongArray(TYPES.length);
+    private final AtomicLong unknown = new AtomicLong();
+    private final AtomicLong unsupported = new AtomicLong();
+    private final AtomicLong unsupportedValues = new AtomicLong();
+    private final LatencyHistogram valueAdded = new LatencyHistogram();
+    private final LatencyHistogram valueChanged = new LatencyHistogram();
+    private final LatencyHistogram nodeAdded = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    //write to confirmation per node id, created on the first write to a node
+    private final AtomicReferenceArray<LatencyHistogram> roundTrips = new AtomicReferenceArray<>(256);
+
+    //a notification was taken off the queue, wait is the time it spent queued
+    public void received(NotificationType type, long wait) {
+        notifications.incrementAndGet(type.ordinal());
+        queueWait.record(wait);
+    }
+
+    //a notification was handled, nanos is the time the handler took
+    public void handled(NotificationType type, long nanos) {
+        switch (type) {
+            case VALUE_ADDED:
+                valueAdded.record(nanos);
+                break;
+            case VALUE_CHANGED:
+            case VALUE_REFRESHED:
+                valueChanged.record(nanos);
+                break;
+            case NODE_ADDED:
+                nodeAdded.record(nanos);
+                break;
+            default:
+                break;
+        }
+    }
+
+    //notification type the link has no handler for
+    public void unknown() {
+        unknown.incrementAndGet();
+    }
+
+    //NOT_SUPPORTED notification
+    public void unsupported() {
+        unsupported.incrementAndGet();
+    }
+
+    //value of a type the link cannot represent (schedule, button)
+    public void unsupportedValue() {
+        unsupportedValues.incrementAndGet();
+    }
+
+    //a written value was confirmed by the device
+    public void roundTrip(short nodeId, long nanos) {
+        int i = nodeId & 0xFF;
+        LatencyHistogram h = roundTrips.get(i);
+        if (h == null) {
+            roundTrips.compareAndSet(i, null, new LatencyHistogram());
+            h = roundTrips.get(i);
+        }
+        h.record(nanos);
+    }
+
+    public static NotificationType[] getTypes() {
+        return TYPES.clone();
+    }
+
+    public long getNotifications(NotificationType type) {
+        return notifications.get(type.ordinal());
+    }
+
+    public long getUnknown() {
+        return unknown.get();
+    }
+
+    public long getUnsupported() {
+        return unsupported.get();
+    }
+
+    public long getUnsupportedValues() {
+        return unsupportedValues.get();
+    }
+
+    public LatencyHistogram getValueAdded() {
+        return valueAdded;
+    }
+
+    public LatencyHistogram getValueChanged() {
+        return valueChanged;
+    }
+
+    public LatencyHistogram getNodeAdded() {
+        return nodeAdded;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    //round trip histogram of a node, null if nothing was written to it yet
+    public LatencyHistogram getRoundTrip(short nodeId) {
+        return roundTrips.get(nodeId & 0xFF);
+    }
+}
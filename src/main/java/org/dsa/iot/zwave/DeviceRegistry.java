@@ -0,0 +1,49 @@
+package org.dsa.iot.zwave;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//devices of a controller indexed by their ZWave node id
+//node ids are a single byte (1-232), so a fixed table replaces the string keyed map and
+//lookups neither allocate nor race with action handlers that iterate the devices
+public class DeviceRegistry {
+
+    private static final int SLOTS = 256;
+
+    private final AtomicReferenceArray<ZWaveDevice> slots = new AtomicReferenceArray<>(SLOTS);
+
+    public ZWaveDevice get(short nodeId) {
+        return slots.get(nodeId & 0xFF);
+    }
+
+    public boolean contains(short nodeId) {
+        return get(nodeId) != null;
+    }
+
+    //returns the device previously registered for the node id
+    public ZWaveDevice put(short nodeId, ZWaveDevice device) {
+        return slots.getAndSet(nodeId & 0xFF, device);
+    }
+
+    public ZWaveDevice remove(short nodeId) {
+        return slots.getAndSet(nodeId & 0xFF, null);
+    }
+
+    //only removes the entry if it still maps to the given device
+    public boolean remove(short nodeId, ZWaveDevice device) {
+        return slots.compareAndSet(nodeId & 0xFF, device, null);
+    }
+
+    //point in time copy of the registered devices, ordered by node id
+    public List<ZWaveDevice> snapshot() {
+        List<ZWaveDevice> list = new ArrayList<>();
+        for (int i = 0; i < SLOTS; i++) {
+            ZWaveDevice device = slots.get(i);
+            if (device != null) {
+                list.add(device);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,225 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.value.Value;
+import org.zwave4j.ValueGenre;
+import org.zwave4j.ValueId;
+import org.zwave4j.ValueType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+//compact binary snapshot of a controller's devices, data points and last readings
+//written while the link runs and read at startup so the tree can be rebuilt before
+//OpenZWave has finished interviewing the network
+public class DeviceSnapshot {
+
+    private static final int MAGIC = 0x5A57534E; //"ZWSN"
+    private static final int VERSION = 1;
+
+    private static final byte NONE = 0;
+    private static final byte BOOL = 1;
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+
+    //a device as recorded in the snapshot
+    public static class Device {
+        private final short nodeId;
+        private final String displayName;
+        private final List<Point> points = new ArrayList<>();
+
+        private Device(short nodeId, String displayName) {
+            this.nodeId = nodeId;
+            this.displayName = displayName;
+        }
+
+        public short getNodeId() {
+            return nodeId;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public List<Point> getPoints() {
+            return points;
+        }
+    }
+
+    //a data point and its last known reading
+    public static class Point {
+        private final ValueId valueId;
+        private final String name;
+        private final String units;
+        private final Value value;
+
+        private Point(ValueId valueId, String name, String units, Value value) {
+            this.valueId = valueId;
+            this.name = name;
+            this.units = units;
+            this.value = value;
+        }
+
+        public ValueId getValueId() {
+            return valueId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnits() {
+            return units;
+        }
+
+        public Value getValue() {
+            return value;
+        }
+    }
+
+    private final long homeId;
+    private final List<Device> devices;
+
+    private DeviceSnapshot(long homeId, List<Device> devices) {
+        this.homeId = homeId;
+        this.devices = devices;
+    }
+
+    public long getHomeId() {
+        return homeId;
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    //write the current devices of a connection, replacing the file atomically
+    public static void write(File file, long homeId, List<ZWaveDevice> devices) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!(dir.exists() || dir.mkdirs())) {
+            throw new IOException("Failed to create " + dir.getAbsolutePath());
+        }
+        Path tmp = new File(dir, file.getName() + ".tmp").toPath();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(homeId);
+            out.writeInt(devices.size());
+            for (ZWaveDevice device : devices) {
+                out.writeShort(device.getNodeId());
+                out.writeUTF(nonNull(device.getDisplayName()));
+                List<ValuePoint> points = new ArrayList<>(device.getPoints().values());
+                out.writeInt(points.size());
+                for (ValuePoint point : points) {
+                    ValueId id = point.getValueId();
+                    out.writeByte(id.getCommandClassId());
+                    out.writeByte(id.getInstance());
+                    out.writeShort(id.getIndex());
+                    out.writeByte(id.getGenre().ordinal());
+                    out.writeByte(id.getType().ordinal());
+                    out.writeUTF(point.getName());
+                    out.writeUTF(nonNull(point.getUnits()));
+                    writeValue(out, point);
+                }
+            }
+        }
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeValue(DataOutputStream out, ValuePoint point) throws IOException {
+        Value value = point.getValue();
+        if (value == null) {
+            out.writeByte(NONE);
+            return;
+        }
+        switch (point.getType()) {
+            case BOOL:
+                out.writeByte(BOOL);
+                out.writeBoolean(value.getBool() != null && value.getBool());
+                break;
+            case BYTE:
+            case DECIMAL:
+            case INT:
+            case SHORT:
+                if (value.getNumber() == null) {
+                    out.writeByte(NONE);
+                } else {
+                    out.writeByte(NUMBER);
+                    out.writeDouble(value.getNumber().doubleValue());
+                }
+                break;
+            case LIST:
+            case STRING:
+                if (value.getString() == null) {
+                    out.writeByte(NONE);
+                } else {
+                    out.writeByte(STRING);
+                    out.writeUTF(value.getString());
+                }
+                break;
+            default:
+                out.writeByte(NONE);
+                break;
+        }
+    }
+
+    //read a snapshot, returns null if the file does not exist
+    public static DeviceSnapshot read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long homeId = in.readLong();
+            int deviceCount = in.readInt();
+            List<Device> devices = new ArrayList<>(deviceCount);
+            ValueGenre[] genres = ValueGenre.values();
+            ValueType[] types = ValueType.values();
+            for (int d = 0; d < deviceCount; d++) {
+                short nodeId = in.readShort();
+                Device device = new Device(nodeId, in.readUTF());
+                int pointCount = in.readInt();
+                for (int p = 0; p < pointCount; p++) {
+                    short cc = (short) in.readUnsignedByte();
+                    short instance = (short) in.readUnsignedByte();
+                    short index = in.readShort();
+                    ValueGenre genre = genres[in.readUnsignedByte()];
+                    ValueType type = types[in.readUnsignedByte()];
+                    ValueId id = new ValueId(homeId, nodeId, genre, cc, instance, index, type);
+                    String name = in.readUTF();
+                    String units = in.readUTF();
+                    device.points.add(new Point(id, name, units, readValue(in)));
+                }
+                devices.add(device);
+            }
+            return new DeviceSnapshot(homeId, devices);
+        }
+    }
+
+    private static Value readValue(DataInputStream in) throws IOException {
+        switch (in.readByte()) {
+            case BOOL:
+                return new Value(in.readBoolean());
+            case NUMBER:
+                return new Value(in.readDouble());
+            case STRING:
+                return new Value(in.readUTF());
+            default:
+                return null;
+        }
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -0,0 +1,57 @@
+package org.dsa.iot.zwave;
+
+//memory budget shared by the value histories of all connections
+//a history is only created while it fits, lowering the budget keeps the existing histories
+//but refuses new ones until enough are released
+public class HistoryBudget {
+
+    public static final long DEFAULT_BUDGET = 16 * 1024; //kilobytes
+
+    private long budget = DEFAULT_BUDGET * 1024; //bytes
+    private long used;
+    private int buffers;
+
+    //a history for capacity samples, null if the budget does not allow it
+    public synchronized ValueHistory allocate(int capacity) {
+        long bytes = ValueHistory.bytes(capacity);
+        if (capacity <= 0 || used + bytes > budget) {
+            return null;
+        }
+        used += bytes;
+        buffers++;
+        return new ValueHistory(capacity);
+    }
+
+    //a history that was already released is ignored
+    public synchronized void release(ValueHistory history) {
+        if (history != null && history.markReleased()) {
+            used -= ValueHistory.bytes(history.getCapacity());
+            buffers--;
+        }
+    }
+
+    //release the history of a data point and drop it from the point
+    public void release(ValuePoint point) {
+        ValueHistory history = point.getHistory();
+        point.setHistory(null);
+        release(history);
+    }
+
+    public synchronized void setBudget(long kilobytes) {
+        budget = Math.max(0, kilobytes) * 1024;
+    }
+
+    //kilobytes
+    public synchronized long getBudget() {
+        return budget / 1024;
+    }
+
+    //kilobytes
+    public synchronized long getUsed() {
+        return (used + 1023) / 1024;
+    }
+
+    public synchronized int getBuffers() {
+        return buffers;
+    }
+}
@@ -0,0 +1,240 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.NodeBuilder;
+import org.dsa.iot.dslink.node.Permission;
+import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.actions.Action;
+import org.dsa.iot.dslink.node.actions.ActionResult;
+import org.dsa.iot.dslink.node.actions.Parameter;
+import org.dsa.iot.dslink.node.actions.ResultType;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+//progress of the controller's interview of its devices
+//the notification handlers only record what happened (per device on ZWaveDevice, counters
+//here) and mark the tracker dirty; the summary under the connection's "Interview" node is
+//published by the periodic stats task, so a startup with thousands of values causes one
+//update per second instead of one per value
+public class InterviewTracker {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(InterviewTracker.class);
+    }
+
+    //phase of the network interview
+    public enum Phase {
+        STARTING, INTERVIEWING, AWAKE_NODES_QUERIED, COMPLETE
+    }
+
+    private static final String[] COUNTERS = {"Nodes", "Complete", "Ready", "Pending", "Sleeping", "Dead", "Values"};
+
+    private final ZWaveConn conn;
+    private final Node parent;
+    private final Node interviewNode;
+    private Phase phase = Phase.STARTING;
+    private long start = System.currentTimeMillis();
+    private long finished; //currentTimeMillis the last phase was reached, 0 while interviewing
+    private int values;
+    private volatile boolean dirty = true;
+
+    public InterviewTracker(ZWaveConn conn, Node parent) {
+        this.conn = conn;
+        this.parent = parent;
+        NodeBuilder ib = parent.createChild("Interview");
+        ib.setSerializable(false);
+        interviewNode = ib.build();
+        {
+            NodeBuilder b = interviewNode.createChild("Phase");
+            b.setValueType(ValueType.STRING);
+            b.setValue(new Value(phase.name()));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        for (String name : COUNTERS) {
+            number(name, null);
+        }
+        number("Progress", "%");
+        number("Elapsed", "s");
+        number("ETA", "s");
+
+        Action act = new Action(Permission.READ, new StatusHandler());
+        act.addResult(new Parameter("Node", ValueType.NUMBER));
+        act.addResult(new Parameter("Name", ValueType.STRING));
+        act.addResult(new Parameter("Interview", ValueType.STRING));
+        act.addResult(new Parameter("Query Stage", ValueType.STRING));
+        act.addResult(new Parameter("Sleeping", ValueType.BOOL));
+        act.addResult(new Parameter("Health", ValueType.STRING));
+        act.addResult(new Parameter("Ready After", ValueType.NUMBER));
+        act.addResult(new Parameter("Complete After", ValueType.NUMBER));
+        act.setResultType(ResultType.TABLE);
+        interviewNode.createChild("Interview Status").setAction(act).setSerializable(false).build();
+    }
+
+    private void number(String name, String unit) {
+        NodeBuilder b = interviewNode.createChild(name);
+        b.setValueType(ValueType.NUMBER);
+        b.setValue(new Value(0));
+        if (unit != null) {
+            b.setAttribute("unit", new Value(unit));
+        }
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+    }
+
+    //the driver is ready, OpenZWave starts (re)interviewing every device
+    public synchronized void start() {
+        phase = Phase.INTERVIEWING;
+        start = System.currentTimeMillis();
+        finished = 0;
+        values = 0;
+        dirty = true;
+    }
+
+    //the awake devices (AWAKE_NODES_QUERIED) or all devices (ALL_NODES_QUERIED) are interviewed
+    public synchronized void reached(Phase phase) {
+        if (phase.ordinal() <= this.phase.ordinal()) {
+            return;
+        }
+        this.phase = phase;
+        finished = System.currentTimeMillis();
+        dirty = true;
+        LOGGER.info("Interview of {}: {} after {} s", parent.getName(), phase,
+                (finished - start) / 1000);
+    }
+
+    public synchronized Phase getPhase() {
+        return phase;
+    }
+
+    //a data point was added to a device
+    public synchronized void valueAdded() {
+        values++;
+        dirty = true;
+    }
+
+    //a device's interview, health or sleep state changed
+    public void changed() {
+        dirty = true;
+    }
+
+    //publish the summary if anything changed since the last time (daemon pool)
+    //while interviewing the elapsed time and ETA move on their own, so the summary is recomputed
+    //every time but only the values that differ are set
+    public void publish() {
+        if (!dirty && getPhase() != Phase.INTERVIEWING) {
+            return;
+        }
+        dirty = false;
+        int nodes = 0;
+        int complete = 0;
+        int ready = 0;
+        int sleeping = 0;
+        int dead = 0;
+        int awakePending = 0;
+        for (ZWaveDevice zwd : conn.getDevices().snapshot()) {
+            nodes++;
+            if (zwd.getHealth() == ZWaveDevice.Health.DEAD) {
+                dead++;
+            } else if (zwd.isAsleep()) {
+                sleeping++;
+            }
+            switch (zwd.getInterview()) {
+                case COMPLETE:
+                    complete++;
+                    break;
+                case ESSENTIAL:
+                    ready++;
+                    break;
+                default:
+                    if (!zwd.isSleeper() && zwd.getHealth() != ZWaveDevice.Health.DEAD) {
+                        awakePending++;
+                    }
+                    break;
+            }
+        }
+        Phase p;
+        long elapsed;
+        int vals;
+        synchronized (this) {
+            p = phase;
+            elapsed = (finished != 0 ? finished : System.currentTimeMillis()) - start;
+            vals = values;
+        }
+        int pending = nodes - complete - ready;
+        //devices that are awake are interviewed at a steady pace, sleeping ones wait for their wake-up
+        long eta = 0;
+        if (awakePending > 0 && p == Phase.INTERVIEWING) {
+            int done = complete + ready;
+            eta = done > 0 ? Math.round((double) elapsed / done * awakePending / 1000) : -1;
+        }
+
+        set("Phase", new Value(p.name()));
+        set("Nodes", new Value(nodes));
+        set("Complete", new Value(complete));
+        set("Ready", new Value(ready));
+        set("Pending", new Value(pending));
+        set("Sleeping", new Value(sleeping));
+        set("Dead", new Value(dead));
+        set("Values", new Value(vals));
+        set("Progress", new Value(nodes == 0 ? 0 : Math.round(complete * 100.0 / nodes)));
+        set("Elapsed", new Value(elapsed / 1000));
+        set("ETA", new Value(eta));
+    }
+
+    private void set(String name, Value value) {
+        Node child = interviewNode.getChild(name);
+        if (child != null && !same(child.getValue(), value)) {
+            child.setValue(value);
+        }
+    }
+
+    private static boolean same(Value old, Value value) {
+        if (old == null) {
+            return false;
+        }
+        if (value.getNumber() != null) {
+            return old.getNumber() != null && old.getNumber().doubleValue() == value.getNumber().doubleValue();
+        }
+        return value.getString() != null && value.getString().equals(old.getString());
+    }
+
+    //handler listing the interview state of every device
+    private class StatusHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            List<ZWaveDevice> list = new ArrayList<>(conn.getDevices().snapshot());
+            Collections.sort(list, new Comparator<ZWaveDevice>() {
+                @Override
+                public int compare(ZWaveDevice a, ZWaveDevice b) {
+                    return a.getNodeId() - b.getNodeId();
+                }
+            });
+            Table table = event.getTable();
+            for (ZWaveDevice zwd : list) {
+                table.addRow(Row.make(new Value(zwd.getNodeId()), new Value(zwd.getDisplayName()),
+                        new Value(zwd.getInterview().name()), new Value(zwd.getQueryStage()),
+                        new Value(zwd.isAsleep()), new Value(zwd.getHealth().name()),
+                        new Value(seconds(zwd.getEssentialTime())), new Value(seconds(zwd.getCompleteTime()))));
+            }
+        }
+
+        private double seconds(long millis) {
+            return millis < 0 ? -1 : millis / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.dsa.iot.zwave;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//open addressing hash map keyed by a primitive long
+//lookups do not box the key or allocate, which keeps the notification hot path garbage free
+//not thread safe, callers must confine access to a single thread or synchronize externally
+public class LongMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    //the zero key is kept outside of the table since zero marks an empty slot
+    private boolean hasZero;
+    private V zeroValue;
+
+    public LongMap() {
+        this(64);
+    }
+
+    public LongMap(int expected) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    //spread the key bits so sequential keys do not cluster
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return hasZero ? zeroValue : null;
+        }
+        int i = hash(key) & mask;
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                return (V) values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (!hasZero) {
+                size++;
+            }
+            hasZero = true;
+            zeroValue = value;
+            return old;
+        }
+        int i = hash(key) & mask;
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            if (!hasZero) {
+                return null;
+            }
+            V old = zeroValue;
+            hasZero = false;
+            zeroValue = null;
+            size--;
+            return old;
+        }
+        int i = hash(key) & mask;
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                V old = (V) values[i];
+                size--;
+                shiftBack(i);
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    //backward shift deletion keeps probe chains intact without tombstones
+    private void shiftBack(int free) {
+        int i = (free + 1) & mask;
+        long k;
+        while ((k = keys[i]) != 0) {
+            int home = hash(k) & mask;
+            boolean move = (free <= i) ? (home <= free || home > i) : (home <= free && home > i);
+            if (move) {
+                keys[free] = k;
+                values[free] = values[i];
+                free = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[free] = 0;
+        values[free] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k != 0) {
+                int i = hash(k) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZero = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    //copy of the values, safe to iterate while the map is modified
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        if (hasZero) {
+            list.add(zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                list.add((V) values[i]);
+            }
+        }
+        return list;
+    }
+}
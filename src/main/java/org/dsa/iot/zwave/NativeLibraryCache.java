@@ -0,0 +1,152 @@
+package org.dsa.iot.zwave;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zwave4j.NativeLibraryLoader;
+import org.zwave4j.ZWave4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+//loads the zwave4j native library from a persistent cache directory
+//NativeLibraryLoader copies the library out of the zwave4j jar into a temp file on every
+//start; the cache keeps it under a directory named after the entry's CRC so it is only
+//extracted again when the zwave4j jar changes
+public class NativeLibraryCache {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(NativeLibraryCache.class);
+    }
+
+    private final File cacheDir;
+
+    public NativeLibraryCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    //load the library, falling back to NativeLibraryLoader if it cannot be cached
+    public void load() {
+        try {
+            File lib = cached();
+            if (lib != null) {
+                System.load(lib.getAbsolutePath());
+                LOGGER.info("Loaded native library from {}", lib.getAbsolutePath());
+                return;
+            }
+        } catch (IOException | UnsatisfiedLinkError e) {
+            LOGGER.warn("Native library cache unavailable - {}", e.getMessage());
+        }
+        NativeLibraryLoader.loadLibrary(ZWave4j.LIBRARY_NAME, ZWave4j.class);
+    }
+
+    //returns the cached library file, extracting it first if needed
+    //null if zwave4j is not loaded from a jar or has no library for this platform
+    private File cached() throws IOException {
+        CodeSource source = ZWave4j.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return null;
+        }
+        URL location = source.getLocation();
+        File jar = new File(location.getPath());
+        if (!jar.isFile()) {
+            return null;
+        }
+        try (ZipFile zf = new ZipFile(jar)) {
+            ZipEntry entry = findEntry(zf);
+            if (entry == null) {
+                return null;
+            }
+            String libName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+            File dir = new File(cacheDir, Long.toHexString(entry.getCrc()));
+            File lib = new File(dir, libName);
+            if (lib.isFile() && lib.length() == entry.getSize()) {
+                return lib;
+            }
+            if (!(dir.exists() || dir.mkdirs())) {
+                throw new IOException("Failed to create " + dir.getAbsolutePath());
+            }
+            Path tmp = new File(dir, libName + ".tmp").toPath();
+            try (InputStream is = zf.getInputStream(entry)) {
+                Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmp, lib.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return lib;
+        }
+    }
+
+    //the library entry for the running OS and architecture
+    private static ZipEntry findEntry(ZipFile zf) {
+        String libName = System.mapLibraryName(ZWave4j.LIBRARY_NAME);
+        List<ZipEntry> candidates = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zf.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith("/" + libName)) {
+                candidates.add(entry);
+            }
+        }
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        String os = osName();
+        String[] arch = archNames();
+        for (ZipEntry entry : candidates) {
+            String name = entry.getName().toLowerCase(Locale.ENGLISH);
+            if (!name.contains(os)) {
+                continue;
+            }
+            for (String a : arch) {
+                if (name.contains("/" + a + "/")) {
+                    return entry;
+                }
+            }
+        }
+        //ambiguous, let NativeLibraryLoader decide
+        return null;
+    }
+
+    private static String osName() {
+        String os = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
+        if (os.contains("win")) {
+            return "windows";
+        } else if (os.contains("mac")) {
+            return "osx";
+        }
+        return "linux";
+    }
+
+    private static String[] archNames() {
+        String arch = System.getProperty("os.arch").toLowerCase(Locale.ENGLISH);
+        switch (arch) {
+            case "amd64":
+            case "x86_64":
+                return new String[] {"amd64", "x86_64", "x64"};
+            case "x86":
+            case "i386":
+            case "i686":
+                return new String[] {"x86", "i386"};
+            case "aarch64":
+            case "arm64":
+                return new String[] {"aarch64", "arm64"};
+            default:
+                if (arch.startsWith("arm")) {
+                    return new String[] {"arm", arch};
+                }
+                return new String[] {arch};
+        }
+    }
+}
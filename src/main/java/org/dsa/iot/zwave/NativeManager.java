@@ -0,0 +1,347 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.zwave4j.Manager;
+import org.zwave4j.Notification;
+import org.zwave4j.NotificationWatcher;
+import org.zwave4j.ValueId;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+//ZWaveManager backed by the process wide zwave4j Manager
+public class NativeManager implements ZWaveManager {
+
+    private final Manager manager;
+
+    public NativeManager(Manager manager) {
+        this.manager = manager;
+    }
+
+    //notifications are copied on the OpenZWave thread, the Notification is only valid during the callback
+    //do NOT use manager.removeWatcher(watcher), it causes a JVM crash
+    @Override
+    public void addEventHandler(final Handler<ZWaveEvent> handler) {
+        manager.addWatcher(new NotificationWatcher() {
+            @Override
+            public void onNotification(Notification notification, Object context) {
+                handler.handle(ZWaveEvent.copyOf(notification, manager));
+            }
+        }, null);
+    }
+
+    @Override
+    public boolean addDriver(String port) {
+        return manager.addDriver(port);
+    }
+
+    @Override
+    public boolean removeDriver(String port) {
+        return manager.removeDriver(port);
+    }
+
+    @Override
+    public String getControllerPath(long homeId) {
+        return manager.getControllerPath(homeId);
+    }
+
+    @Override
+    public short getControllerNodeId(long homeId) {
+        return manager.getControllerNodeId(homeId);
+    }
+
+    @Override
+    public void writeConfig(long homeId) {
+        manager.writeConfig(homeId);
+    }
+
+    @Override
+    public boolean requestNodeState(long homeId, short nodeId) {
+        return manager.requestNodeState(homeId, nodeId);
+    }
+
+    @Override
+    public boolean refreshNodeInfo(long homeId, short nodeId) {
+        return manager.refreshNodeInfo(homeId, nodeId);
+    }
+
+    @Override
+    public String getNodeProductName(long homeId, short nodeId) {
+        return manager.getNodeProductName(homeId, nodeId);
+    }
+
+    @Override
+    public boolean isNodeFailed(long homeId, short nodeId) {
+        return manager.isNodeFailed(homeId, nodeId);
+    }
+
+    @Override
+    public boolean isNodeListeningDevice(long homeId, short nodeId) {
+        return manager.isNodeListeningDevice(homeId, nodeId);
+    }
+
+    @Override
+    public boolean isNodeFrequentListeningDevice(long homeId, short nodeId) {
+        return manager.isNodeFrequentListeningDevice(homeId, nodeId);
+    }
+
+    @Override
+    public String getNodeQueryStage(long homeId, short nodeId) {
+        return manager.getNodeQueryStage(homeId, nodeId);
+    }
+
+    @Override
+    public void testNetworkNode(long homeId, short nodeId, int count) {
+        manager.testNetworkNode(homeId, nodeId, count);
+    }
+
+    @Override
+    public void switchAllOn(long homeId) {
+        manager.switchAllOn(homeId);
+    }
+
+    @Override
+    public void switchAllOff(long homeId) {
+        manager.switchAllOff(homeId);
+    }
+
+    @Override
+    public String getValueLabel(ValueId valueId) {
+        return manager.getValueLabel(valueId);
+    }
+
+    @Override
+    public String getValueUnits(ValueId valueId) {
+        return manager.getValueUnits(valueId);
+    }
+
+    @Override
+    public boolean refreshValue(ValueId valueId) {
+        return manager.refreshValue(valueId);
+    }
+
+    @Override
+    public boolean getValueAsBool(ValueId valueId, AtomicReference<Boolean> value) {
+        return manager.getValueAsBool(valueId, value);
+    }
+
+    @Override
+    public boolean getValueAsByte(ValueId valueId, AtomicReference<Short> value) {
+        return manager.getValueAsByte(valueId, value);
+    }
+
+    @Override
+    public boolean getValueAsFloat(ValueId valueId, AtomicReference<Float> value) {
+        return manager.getValueAsFloat(valueId, value);
+    }
+
+    @Override
+    public boolean getValueAsInt(ValueId valueId, AtomicReference<Integer> value) {
+        return manager.getValueAsInt(valueId, value);
+    }
+
+    @Override
+    public boolean getValueAsShort(ValueId valueId, AtomicReference<Short> value) {
+        return manager.getValueAsShort(valueId, value);
+    }
+
+    @Override
+    public boolean getValueAsString(ValueId valueId, AtomicReference<String> value) {
+        return manager.getValueAsString(valueId, value);
+    }
+
+    @Override
+    public boolean getValueAsRaw(ValueId valueId, AtomicReference<short[]> value) {
+        return manager.getValueAsRaw(valueId, value);
+    }
+
+    @Override
+    public boolean getValueListSelectionString(ValueId valueId, AtomicReference<String> value) {
+        return manager.getValueListSelectionString(valueId, value);
+    }
+
+    @Override
+    public boolean getValueListItems(ValueId valueId, List<String> items) {
+        return manager.getValueListItems(valueId, items);
+    }
+
+    @Override
+    public boolean setValueAsBool(ValueId valueId, boolean value) {
+        return manager.setValueAsBool(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsByte(ValueId valueId, short value) {
+        return manager.setValueAsByte(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsFloat(ValueId valueId, float value) {
+        return manager.setValueAsFloat(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsInt(ValueId valueId, int value) {
+        return manager.setValueAsInt(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsShort(ValueId valueId, short value) {
+        return manager.setValueAsShort(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsString(ValueId valueId, String value) {
+        return manager.setValueAsString(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsRaw(ValueId valueId, short[] value) {
+        return manager.setValueAsRaw(valueId, value);
+    }
+
+    @Override
+    public boolean setValueListSelection(ValueId valueId, String item) {
+        return manager.setValueListSelection(valueId, item);
+    }
+
+    @Override
+    public boolean enablePoll(ValueId valueId, short intensity) {
+        return manager.enablePoll(valueId, intensity);
+    }
+
+    @Override
+    public boolean disablePoll(ValueId valueId) {
+        return manager.disablePoll(valueId);
+    }
+
+    @Override
+    public boolean isPolled(ValueId valueId) {
+        return manager.isPolled(valueId);
+    }
+
+    @Override
+    public void setPollIntensity(ValueId valueId, short intensity) {
+        manager.setPollIntensity(valueId, intensity);
+    }
+
+    @Override
+    public short getPollIntensity(ValueId valueId) {
+        return manager.getPollIntensity(valueId);
+    }
+
+    @Override
+    public void setPollInterval(int millis, boolean intervalBetweenPolls) {
+        manager.setPollInterval(millis, intervalBetweenPolls);
+    }
+
+    @Override
+    public short createScene() {
+        return manager.createScene();
+    }
+
+    @Override
+    public boolean removeScene(short sceneId) {
+        return manager.removeScene(sceneId);
+    }
+
+    @Override
+    public boolean sceneExists(short sceneId) {
+        return manager.sceneExists(sceneId);
+    }
+
+    @Override
+    public boolean activateScene(short sceneId) {
+        return manager.activateScene(sceneId);
+    }
+
+    @Override
+    public String getSceneLabel(short sceneId) {
+        return manager.getSceneLabel(sceneId);
+    }
+
+    @Override
+    public void setSceneLabel(short sceneId, String label) {
+        manager.setSceneLabel(sceneId, label);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, boolean value) {
+        return manager.addSceneValue(sceneId, valueId, value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, float value) {
+        return manager.addSceneValue(sceneId, valueId, value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, int value) {
+        return manager.addSceneValue(sceneId, valueId, value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, short value) {
+        return manager.addSceneValue(sceneId, valueId, value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, String value) {
+        return manager.addSceneValue(sceneId, valueId, value);
+    }
+
+    @Override
+    public boolean addSceneValueListSelection(short sceneId, ValueId valueId, String item) {
+        return manager.addSceneValueListSelection(sceneId, valueId, item);
+    }
+
+    @Override
+    public boolean removeSceneValue(short sceneId, ValueId valueId) {
+        return manager.removeSceneValue(sceneId, valueId);
+    }
+
+    @Override
+    public short getNumGroups(long homeId, short nodeId) {
+        return manager.getNumGroups(homeId, nodeId);
+    }
+
+    @Override
+    public long getAssociations(long homeId, short nodeId, short groupIdx, AtomicReference<short[]> associations) {
+        return manager.getAssociations(homeId, nodeId, groupIdx, associations);
+    }
+
+    @Override
+    public short getMaxAssociations(long homeId, short nodeId, short groupIdx) {
+        return manager.getMaxAssociations(homeId, nodeId, groupIdx);
+    }
+
+    @Override
+    public String getGroupLabel(long homeId, short nodeId, short groupIdx) {
+        return manager.getGroupLabel(homeId, nodeId, groupIdx);
+    }
+
+    @Override
+    public void addAssociation(long homeId, short nodeId, short groupIdx, short targetNodeId) {
+        manager.addAssociation(homeId, nodeId, groupIdx, targetNodeId);
+    }
+
+    @Override
+    public void removeAssociation(long homeId, short nodeId, short groupIdx, short targetNodeId) {
+        manager.removeAssociation(homeId, nodeId, groupIdx, targetNodeId);
+    }
+
+    @Override
+    public long getNodeNeighbors(long homeId, short nodeId, AtomicReference<short[]> neighbors) {
+        return manager.getNodeNeighbors(homeId, nodeId, neighbors);
+    }
+
+    @Override
+    public void healNetworkNode(long homeId, short nodeId, boolean doReturnRoutes) {
+        manager.healNetworkNode(homeId, nodeId, doReturnRoutes);
+    }
+
+    @Override
+    public void healNetwork(long homeId, boolean doReturnRoutes) {
+        manager.healNetwork(homeId, doReturnRoutes);
+    }
+}
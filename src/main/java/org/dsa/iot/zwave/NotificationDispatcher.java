@@ -0,0 +1,244 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//bounded, per-controller notification pipeline
+//the OpenZWave callback thread only enqueues copied events, a dedicated consumer thread
+//applies them to the node tree in the order they were received
+public class NotificationDispatcher {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+    }
+
+    //what to do with a value update when the queue is full
+    //structural notifications (nodes, drivers, value add/remove) are never dropped
+    public enum OverflowPolicy {
+        DROP_NEWEST, //discard the incoming value update
+        BLOCK //make the OpenZWave callback wait for space
+    }
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final long MIN_COALESCE_WINDOW = 50;
+    public static final long MAX_COALESCE_WINDOW = 1000;
+
+    private final BlockingQueue<ZWaveEvent> queue;
+    private final int capacity;
+    private final Handler<ZWaveEvent> handler;
+    private final String name;
+    private volatile OverflowPolicy policy;
+    private volatile long coalesceWindow; //milliseconds, 0 when coalescing is off
+    private volatile boolean running;
+    private Thread thread;
+
+    //latest pending value update per ValuePoint.key(), only touched by the dispatcher thread
+    private final LongMap<ZWaveEvent> pending = new LongMap<>(256);
+    //keys of the pending updates in the order the values first changed in the window
+    private long[] order = new long[256];
+    private int ordered;
+    private long windowEnd;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public NotificationDispatcher(String name, int capacity, OverflowPolicy policy,
+                                  Handler<ZWaveEvent> handler) {
+        this.name = name;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "zwave-dispatch-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //stop the consumer and wait for the notification it is handling, so the caller can tear
+    //down what only the dispatcher thread touches
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            t.interrupt();
+            if (t != Thread.currentThread()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        queue.clear();
+    }
+
+    //called from the OpenZWave callback thread, must not touch the node tree
+    public void offer(ZWaveEvent event) {
+        if (!running) {
+            return;
+        }
+        received.incrementAndGet();
+        if (event.isValueUpdate() && policy == OverflowPolicy.DROP_NEWEST) {
+            if (!queue.offer(event)) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } else {
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        updateHighWaterMark(queue.size());
+    }
+
+    private void updateHighWaterMark(long depth) {
+        long hwm = highWaterMark.get();
+        while (depth > hwm && !highWaterMark.compareAndSet(hwm, depth)) {
+            hwm = highWaterMark.get();
+        }
+    }
+
+    //consumer loop, runs on the dispatcher thread
+    //while a coalescing window is open, value updates only replace the pending update for
+    //the same value and are handed on when the window closes
+    private void consume() {
+        while (running) {
+            ZWaveEvent event;
+            try {
+                long timeout = 1000;
+                if (pending.size() > 0) {
+                    timeout = windowEnd - System.currentTimeMillis();
+                    if (timeout <= 0) {
+                        flushPending();
+                        continue;
+                    }
+                }
+                event = queue.poll(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (event == null) {
+                continue;
+            }
+            long window = coalesceWindow;
+            if (window > 0 && event.isValueUpdate()) {
+                if (pending.size() == 0) {
+                    windowEnd = System.currentTimeMillis() + window;
+                }
+                long key = ValuePoint.key(event.getValueId());
+                if (pending.put(key, event) != null) {
+                    coalesced.incrementAndGet();
+                } else {
+                    if (ordered == order.length) {
+                        order = Arrays.copyOf(order, ordered * 2);
+                    }
+                    order[ordered++] = key;
+                }
+                continue;
+            }
+            //keep the order of structural notifications relative to the value updates
+            if (pending.size() > 0) {
+                flushPending();
+            }
+            handle(event);
+        }
+    }
+
+    //hand the latest update of every pending value to the handler, in the order the values
+    //changed, so readings of different values do not overtake each other
+    private void flushPending() {
+        for (int i = 0; i < ordered; i++) {
+            handle(pending.get(order[i]));
+        }
+        pending.clear();
+        ordered = 0;
+    }
+
+    private void handle(ZWaveEvent event) {
+        try {
+            handler.handle(event);
+        } catch (Exception e) {
+            LOGGER.error("Error handling notification {} for node {}",
+                    event.getType(), event.getNodeId(), e);
+        }
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    //milliseconds, 0 when coalescing is off
+    public long getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    //set the coalescing window, 0 turns coalescing off
+    //other values are clamped to MIN_COALESCE_WINDOW..MAX_COALESCE_WINDOW
+    public void setCoalesceWindow(long millis) {
+        if (millis > 0) {
+            millis = Math.max(MIN_COALESCE_WINDOW, Math.min(MAX_COALESCE_WINDOW, millis));
+        } else {
+            millis = 0;
+        }
+        coalesceWindow = millis;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+}
@@ -0,0 +1,179 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zwave4j.NotificationType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//single watcher of a manager
+//OpenZWave reports the notifications of every controller through the same callback, so the
+//router hands each one to the connection that owns its home id; every connection has its own
+//dispatcher thread, so a busy network cannot starve the others
+public class NotificationRouter {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(NotificationRouter.class);
+    }
+
+    //a connection and the home id of its controller (0 until its driver is ready)
+    private static class Route {
+        private final ZWaveConn conn;
+        private final String port;
+        private final long homeId;
+
+        private Route(ZWaveConn conn, String port, long homeId) {
+            this.conn = conn;
+            this.port = port;
+            this.homeId = homeId;
+        }
+    }
+
+    private final ZWaveManager manager;
+    //copy on write, read without locking on the OpenZWave thread
+    private volatile Route[] routes = new Route[0];
+
+    public NotificationRouter(ZWaveManager manager) {
+        this.manager = manager;
+        manager.addEventHandler(new Handler<ZWaveEvent>() {
+            @Override
+            public void handle(ZWaveEvent event) {
+                route(event);
+            }
+        });
+    }
+
+    public ZWaveManager getManager() {
+        return manager;
+    }
+
+    //register a connection that is about to add the driver for the port
+    //it receives notifications once its driver reports ready
+    public synchronized void expect(ZWaveConn conn, String port) {
+        List<Route> list = copyWithout(conn);
+        list.add(new Route(conn, port, 0));
+        routes = list.toArray(new Route[list.size()]);
+    }
+
+    //stop routing notifications to the connection
+    public synchronized void remove(ZWaveConn conn) {
+        List<Route> list = copyWithout(conn);
+        routes = list.toArray(new Route[list.size()]);
+    }
+
+    private List<Route> copyWithout(ZWaveConn conn) {
+        List<Route> list = new ArrayList<>();
+        for (Route r : routes) {
+            if (r.conn != conn) {
+                list.add(r);
+            }
+        }
+        return list;
+    }
+
+    //called from the OpenZWave callback thread
+    public void route(ZWaveEvent event) {
+        long homeId = event.getHomeId();
+        for (Route r : routes) {
+            if (r.homeId == homeId && homeId != 0) {
+                r.conn.getDispatcher().offer(event);
+                if (event.getType() == NotificationType.DRIVER_REMOVED) {
+                    unbind(r);
+                }
+                return;
+            }
+        }
+
+        switch (event.getType()) {
+            case DRIVER_READY:
+                Route r = bind(homeId);
+                if (r != null) {
+                    r.conn.getDispatcher().offer(event);
+                } else {
+                    LOGGER.warn("Driver ready for unknown controller {}", Long.toHexString(homeId));
+                }
+                break;
+            case DRIVER_FAILED:
+                //a driver that failed never learned its home id, tell every waiting connection
+                for (Route w : routes) {
+                    if (w.homeId == 0) {
+                        w.conn.getDispatcher().offer(event);
+                    }
+                }
+                break;
+            default:
+                LOGGER.debug("Dropped {} for unknown controller {}", event.getType(), Long.toHexString(homeId));
+                break;
+        }
+    }
+
+    //assign a home id to the waiting connection whose port the controller was added on
+    //the port may be spelled differently than the path OpenZWave reports (a /dev/serial/by-id
+    //link to /dev/ttyACM0), so the paths are also compared resolved; if none matches and only
+    //one connection is waiting, the controller can only be that connection's
+    private synchronized Route bind(long homeId) {
+        String path = null;
+        try {
+            path = manager.getControllerPath(homeId);
+        } catch (Exception e) {
+            LOGGER.debug("Controller path not available for {}", Long.toHexString(homeId));
+        }
+        String canonical = path != null ? canonical(path) : null;
+        Route match = null;
+        Route resolved = null;
+        Route only = null;
+        int waiting = 0;
+        for (Route r : routes) {
+            if (r.homeId == 0) {
+                waiting++;
+                only = r;
+                if (path != null && path.equals(r.port)) {
+                    match = r;
+                } else if (resolved == null && canonical != null && canonical.equals(canonical(r.port))) {
+                    resolved = r;
+                }
+            }
+        }
+        if (match == null) {
+            match = resolved;
+        }
+        if (match == null && waiting == 1) {
+            match = only;
+            if (path != null) {
+                LOGGER.warn("Controller path {} matches no port, bound to the only waiting connection on {}",
+                        path, only.port);
+            }
+        }
+        if (match == null) {
+            return null;
+        }
+        List<Route> list = copyWithout(match.conn);
+        Route bound = new Route(match.conn, match.port, homeId);
+        list.add(bound);
+        routes = list.toArray(new Route[list.size()]);
+        LOGGER.info("Controller {} on {} bound", Long.toHexString(homeId), match.port);
+        return bound;
+    }
+
+    //the path with links resolved, the path itself if it cannot be resolved
+    private static String canonical(String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException e) {
+            return path;
+        }
+    }
+
+    //the driver was removed, the connection waits for a new driver on its port
+    private synchronized void unbind(Route route) {
+        List<Route> list = copyWithout(route.conn);
+        list.add(new Route(route.conn, route.port, 0));
+        routes = list.toArray(new Route[list.size()]);
+    }
+}
@@ -0,0 +1,180 @@
+package org.dsa.iot.zwave;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//demand driven polling of the values that have polling enabled
+//OpenZWave polls every polled value once per poll interval divided by its intensity; the
+//scheduler keeps the configured intensity for values that are subscribed or changed recently,
+//backs idle values off, and stretches the poll interval so the estimated poll rate of every
+//controller stays within a share of its command rate
+//the poll interval belongs to the Manager, so there is a single scheduler for all connections
+public class PollScheduler {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(PollScheduler.class);
+    }
+
+    public static final double DEFAULT_BUDGET = 0.2; //share of the controller's command rate
+    public static final long DEFAULT_MIN_INTERVAL = 30000; //milliseconds
+    private static final long ACTIVE_PERIOD = TimeUnit.MINUTES.toNanos(1);
+    private static final int IDLE_FACTOR = 4;
+    private static final int MAX_INTENSITY = 255;
+
+    //a polled value, the manager and write queue of its controller and the intensity configured for it
+    private static class Entry {
+        private final ValuePoint point;
+        private final ZWaveManager manager;
+        private final CommandQueue queue;
+        private final int base;
+        private volatile long lastChange;
+        private int applied;
+
+        private Entry(ValuePoint point, ZWaveConn conn, int base, int applied) {
+            this.point = point;
+            this.manager = conn.getManager();
+            this.queue = conn.getCommandQueue();
+            this.base = base;
+            this.applied = applied;
+            this.lastChange = System.nanoTime();
+        }
+    }
+
+    //keyed by point, value keys are only unique within one network
+    private final Map<ValuePoint, Entry> entries = new ConcurrentHashMap<>();
+    private double budget = DEFAULT_BUDGET;
+    private long minInterval = DEFAULT_MIN_INTERVAL;
+    private long interval;
+    private Map<ZWaveManager, Boolean> intervalSetOn = new IdentityHashMap<>();
+    private double pollRate;
+
+    //turn polling of a value on with the given intensity (1 = every poll cycle), 0 turns it off
+    public void enable(ValuePoint point, ZWaveConn conn, int intensity) {
+        if (intensity <= 0) {
+            conn.getManager().disablePoll(point.getValueId());
+            untrack(point);
+            return;
+        }
+        intensity = Math.min(intensity, MAX_INTENSITY);
+        conn.getManager().enablePoll(point.getValueId(), (short) intensity);
+        entries.put(point, new Entry(point, conn, intensity, intensity));
+        adjust();
+    }
+
+    //start scheduling a value OpenZWave already polls (restored config, POLLING_ENABLED)
+    public void track(ValuePoint point, ZWaveConn conn, int intensity) {
+        if (entries.containsKey(point)) {
+            return;
+        }
+        intensity = Math.max(1, Math.min(intensity, MAX_INTENSITY));
+        entries.put(point, new Entry(point, conn, intensity, conn.getManager().getPollIntensity(point.getValueId())));
+    }
+
+    public void untrack(ValuePoint point) {
+        if (entries.remove(point) != null) {
+            adjust();
+        }
+    }
+
+    //configured intensity of a value, 0 if it is not polled
+    public int getIntensity(ValuePoint point) {
+        Entry e = entries.get(point);
+        return e == null ? 0 : e.base;
+    }
+
+    //a polled value reported a new reading (dispatcher thread)
+    public void changed(ValuePoint point) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Entry e = entries.get(point);
+        if (e != null) {
+            e.lastChange = System.nanoTime();
+        }
+    }
+
+    //recompute the intensities and the poll interval, runs periodically on the daemon pool
+    public synchronized void adjust() {
+        long now = System.nanoTime();
+        double pollsPerCycle = 0;
+        Map<CommandQueue, Double> perController = new IdentityHashMap<>();
+        Map<ZWaveManager, Boolean> managers = new IdentityHashMap<>();
+        for (Entry e : entries.values()) {
+            boolean active = e.point.isSubscribed() || now - e.lastChange < ACTIVE_PERIOD;
+            int wanted = active ? e.base : Math.min(MAX_INTENSITY, e.base * IDLE_FACTOR);
+            managers.put(e.manager, Boolean.TRUE);
+            if (wanted != e.applied) {
+                e.manager.setPollIntensity(e.point.getValueId(), (short) wanted);
+                e.applied = wanted;
+            }
+            pollsPerCycle += 1.0 / wanted;
+            Double polls = perController.get(e.queue);
+            perController.put(e.queue, (polls == null ? 0 : polls) + 1.0 / wanted);
+        }
+
+        long wantedInterval = minInterval;
+        for (Map.Entry<CommandQueue, Double> c : perController.entrySet()) {
+            double allowed = c.getKey().getRate() * budget; //polls per second
+            if (allowed > 0) {
+                wantedInterval = Math.max(wantedInterval, (long) Math.ceil(c.getValue() / allowed * 1000));
+            }
+        }
+        //a manager that was not polling before still has its own interval
+        if (wantedInterval != interval || !intervalSetOn.keySet().containsAll(managers.keySet())) {
+            interval = wantedInterval;
+            for (ZWaveManager m : managers.keySet()) {
+                m.setPollInterval((int) Math.min(Integer.MAX_VALUE, interval), false);
+            }
+            intervalSetOn = managers;
+            LOGGER.info("Poll interval: {} ms for {} polled values", interval, entries.size());
+        }
+        pollRate = interval > 0 ? pollsPerCycle * 1000 / interval : 0;
+    }
+
+    //share of the controller's command rate polling may use (0 to 1), and the shortest poll interval
+    public synchronized void setLimits(double budget, long minInterval) {
+        this.budget = Math.max(0, Math.min(1, budget));
+        this.minInterval = Math.max(1000, minInterval);
+        adjust();
+    }
+
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    public synchronized long getMinInterval() {
+        return minInterval;
+    }
+
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    //estimated polls per second with the current intensities
+    public synchronized double getPollRate() {
+        return pollRate;
+    }
+
+    public int getPolledCount() {
+        return entries.size();
+    }
+
+    //drop the values of a removed connection
+    public void remove(ZWaveConn conn) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().queue == conn.getCommandQueue()) {
+                it.remove();
+            }
+        }
+        adjust();
+    }
+}
@@ -0,0 +1,347 @@
+package org.dsa.iot.zwave;
+
+import jssc.SerialNativeInterface;
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import jssc.SerialPortList;
+import jssc.SerialPortTimeoutException;
+import org.dsa.iot.dslink.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+//cached list of the serial ports and which of them answer as Z-Wave controllers
+//scanning the ports through jssc opens every matching tty, so it only runs at startup and
+//when a device node is added to or removed from /dev (WatchService); the actions read the cache
+//a new USB serial port (CDC ACM, FTDI and the like) is probed once in the background with the
+//Serial API's GetVersion request; other ports are often consoles, modems or other radios and
+//are only probed by an explicit rescan
+public class PortInventory {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(PortInventory.class);
+    }
+
+    private static final Pattern LINUX_PORTS = Pattern.compile("(cu|ttyS|ttyUSB|ttyACM|ttyAMA|rfcomm|ttyO)[0-9]{1,3}");
+    private static final Pattern MAC_PORTS = Pattern.compile("(cu|tty)..*");
+    private static final Pattern USB_PORTS = Pattern.compile("(ttyUSB|ttyACM)[0-9]{1,3}|cu\\.usb.*");
+    private static final long SETTLE_TIME = 500; //milliseconds for udev to finish a burst of changes
+    private static final int PROBE_TIMEOUT = 1000; //milliseconds per read
+    private static final int PROBE_FRAMES = 8; //frames read before a chatty device is given up on
+
+    //Serial API frames
+    private static final byte SOF = 0x01;
+    private static final byte ACK = 0x06;
+    private static final byte NAK = 0x15;
+    private static final byte RESPONSE = 0x01;
+    private static final byte FUNC_GET_VERSION = 0x15;
+    private static final byte[] GET_VERSION = {SOF, 0x03, 0x00, FUNC_GET_VERSION, (byte) 0xE9};
+
+    private final ZWaveLink link;
+    private volatile Set<String> ports = Collections.emptySet();
+    //library version of the controllers, "" for ports that did not answer; missing until probed
+    private final Map<String, String> probed = new ConcurrentHashMap<>();
+    private volatile boolean watching;
+    private final Set<String> claimed = new HashSet<>(); //ports picked in a running Add Connection or Edit
+    private String probing; //port the probe has open, guarded by claimed
+
+    public PortInventory(ZWaveLink link) {
+        this.link = link;
+    }
+
+    //scan the ports once and start watching /dev for changes
+    public void start() {
+        refresh();
+        Path dev = Paths.get("/dev");
+        if (!dev.toFile().isDirectory()) {
+            return;
+        }
+        final WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            dev.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Cannot watch /dev, ports are rescanned when listed - {}", e.getMessage());
+            return;
+        }
+        watching = true;
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(service);
+            }
+        }, "zwave-ports");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    //watcher loop, rescans when a port-like device node comes or goes
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = isPortEvent(key);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                //hotplug creates several nodes in a row, scan once they are all there
+                Thread.sleep(SETTLE_TIME);
+                WatchKey more;
+                while ((more = service.poll()) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                refresh();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watching = false;
+            try {
+                service.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private boolean isPortEvent(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+            } else {
+                String name = event.context().toString();
+                Pattern pattern = pattern();
+                changed |= pattern == null || pattern.matcher(name).matches();
+            }
+        }
+        return changed;
+    }
+
+    //rescan the ports and probe the new USB ones in the background
+    public void refresh() {
+        refresh(false);
+    }
+
+    //rescan the ports, all ports are probed again (explicit rescan) or only new USB ports
+    private synchronized void refresh(boolean probeAll) {
+        long start = System.nanoTime();
+        Set<String> found = new TreeSet<>();
+        String[] names = scan();
+        if (names != null) {
+            Collections.addAll(found, names);
+        }
+        final Set<String> added = new LinkedHashSet<>(found);
+        added.removeAll(ports);
+        final Set<String> candidates = new LinkedHashSet<>();
+        for (String port : probeAll ? found : added) {
+            if (probeAll || USB_PORTS.matcher(new File(port).getName()).matches()) {
+                candidates.add(port);
+            }
+        }
+        Set<String> removed = new HashSet<>(ports);
+        removed.removeAll(found);
+        for (String port : removed) {
+            probed.remove(port);
+        }
+        ports = Collections.unmodifiableSet(found);
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            LOGGER.info("Serial ports: {} (added {}, removed {}) in {} ms", found, added, removed,
+                    (System.nanoTime() - start) / 1000000);
+        }
+        if (!candidates.isEmpty()) {
+            Objects.getDaemonThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    probeAll(candidates);
+                }
+            });
+        }
+    }
+
+    //rescan and probe every port again, including non-USB ports; ports in use are skipped
+    public void rescan() {
+        synchronized (this) {
+            probed.clear();
+        }
+        refresh(true);
+    }
+
+    //keep the probe off a port a connection is about to open, waits for a probe running on it
+    public void claim(String port) {
+        synchronized (claimed) {
+            claimed.add(port);
+            while (port.equals(probing)) {
+                try {
+                    claimed.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    //the connection has the port (or gave up on it), it is in use or free to probe again
+    public void release(String port) {
+        synchronized (claimed) {
+            claimed.remove(port);
+        }
+    }
+
+    //names of the device nodes that are serial ports on this OS, null for any
+    private static Pattern pattern() {
+        switch (SerialNativeInterface.getOsType()) {
+            case SerialNativeInterface.OS_LINUX:
+                return LINUX_PORTS;
+            case SerialNativeInterface.OS_MAC_OS_X:
+                return MAC_PORTS;
+            default:
+                return null;
+        }
+    }
+
+    private static String[] scan() {
+        Pattern pattern = pattern();
+        return pattern != null ? SerialPortList.getPortNames(pattern) : SerialPortList.getPortNames();
+    }
+
+    //the cached ports, the ones known to be controllers first
+    public Set<String> getPorts() {
+        if (!watching) {
+            //nothing tells us about changes, have the next listing see them
+            Objects.getDaemonThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            });
+        }
+        Set<String> current = ports;
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String port : current) {
+            if (isController(port)) {
+                ordered.add(port);
+            }
+        }
+        ordered.addAll(current);
+        return ordered;
+    }
+
+    //whether the port answered the probe as a Z-Wave controller
+    public boolean isController(String port) {
+        String version = probed.get(port);
+        return version != null && !version.isEmpty();
+    }
+
+    //library version reported by the controller on the port, "" if it did not answer, null if not probed
+    public String getVersion(String port) {
+        return probed.get(port);
+    }
+
+    private void probeAll(Set<String> candidates) {
+        for (String port : candidates) {
+            if (probed.containsKey(port)) {
+                continue;
+            }
+            //a probe can take seconds, so the ports in use are checked again for every port; a
+            //connection sets its port before it releases the claim and OpenZWave opens it
+            synchronized (claimed) {
+                if (claimed.contains(port) || link.getPortsInUse().contains(port)) {
+                    continue;
+                }
+                probing = port;
+            }
+            String version;
+            try {
+                version = probe(port);
+            } finally {
+                synchronized (claimed) {
+                    probing = null;
+                    claimed.notifyAll();
+                }
+            }
+            if (ports.contains(port)) {
+                probed.put(port, version);
+            }
+            if (!version.isEmpty()) {
+                LOGGER.info("Z-Wave controller on {} - {}", port, version);
+            }
+        }
+    }
+
+    //send GetVersion and wait for its response, returns the library version or "" if there is none
+    private static String probe(String port) {
+        SerialPort serial = new SerialPort(port);
+        try {
+            if (!serial.openPort()) {
+                return "";
+            }
+            serial.setParams(SerialPort.BAUDRATE_115200, SerialPort.DATABITS_8,
+                    SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+            serial.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
+            //a NAK makes a controller drop any half received frame
+            serial.writeBytes(new byte[] {NAK});
+            serial.writeBytes(GET_VERSION);
+            int skipped = 0;
+            for (int frames = 0; frames < PROBE_FRAMES; ) {
+                byte b = serial.readBytes(1, PROBE_TIMEOUT)[0];
+                if (b != SOF) {
+                    //ACK of the request or line noise
+                    if (++skipped > 64) {
+                        return "";
+                    }
+                    continue;
+                }
+                frames++;
+                int length = serial.readBytes(1, PROBE_TIMEOUT)[0] & 0xFF;
+                if (length < 3) {
+                    return "";
+                }
+                byte[] frame = serial.readBytes(length, PROBE_TIMEOUT);
+                serial.writeBytes(new byte[] {ACK});
+                if (frame[0] != RESPONSE || frame[1] != FUNC_GET_VERSION) {
+                    continue;
+                }
+                StringBuilder version = new StringBuilder();
+                for (int i = 2; i < frame.length - 1 && frame[i] != 0; i++) {
+                    version.append((char) frame[i]);
+                }
+                return version.length() > 0 ? version.toString() : "Z-Wave";
+            }
+            return "";
+        } catch (SerialPortTimeoutException e) {
+            return "";
+        } catch (SerialPortException | RuntimeException e) {
+            LOGGER.debug("Probe of {} failed - {}", port, e.getMessage());
+            return "";
+        } finally {
+            try {
+                if (serial.isOpened()) {
+                    serial.closePort();
+                }
+            } catch (SerialPortException ignored) {
+            }
+        }
+    }
+}
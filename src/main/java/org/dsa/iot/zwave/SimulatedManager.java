@@ -0,0 +1,965 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zwave4j.NotificationType;
+import org.zwave4j.ValueGenre;
+import org.zwave4j.ValueId;
+import org.zwave4j.ValueType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+//in-memory Z-Wave network behind the ZWaveManager interface
+//adding the driver reports the controller, every node and every value like OpenZWave does at
+//startup, then a generator changes random values at the configured rate; sleeping nodes only
+//report (and apply queued writes) when they wake up
+//all notifications are sent from a single thread, like the OpenZWave callback thread
+public class SimulatedManager implements ZWaveManager {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(SimulatedManager.class);
+    }
+
+    public static final short CONTROLLER_NODE = 1;
+    public static final int MAX_NODES = 231;
+    private static final long TICK = 100; //milliseconds between generator runs
+    private static final int WAKE_INTERVAL = 30; //default wake-up interval in seconds
+    private static final long AWAKE_TIME = 2000; //milliseconds a node stays awake after a wake-up
+    private static final short CC_WAKE_UP = 0x84;
+    private static final short CODE_TIMEOUT = 1;
+    private static final short CODE_NOOP = 2;
+    private static final short CODE_AWAKE = 3;
+    private static final short CODE_SLEEP = 4;
+    private static final short CODE_DEAD = 5;
+    private static final short CODE_ALIVE = 6;
+    private static final List<String> MODES = Collections.unmodifiableList(Arrays.asList("Off", "Heat", "Cool", "Auto"));
+
+    //a simulated data point
+    private static class SimValue {
+        private final ValueId valueId;
+        private final String label;
+        private final String units;
+        private volatile Object value;
+        private volatile Object pending; //write waiting for a sleeping node to wake up
+        private volatile short pollIntensity;
+
+        private SimValue(ValueId valueId, String label, String units, Object value) {
+            this.valueId = valueId;
+            this.label = label;
+            this.units = units;
+            this.value = value;
+        }
+    }
+
+    //a simulated scene, the values it sets keyed by value key
+    private static class SimScene {
+        private volatile String label = "";
+        private final Map<Long, Object> values = new ConcurrentHashMap<>();
+    }
+
+    private final long homeId;
+    private final int nodes;
+    private final Map<Short, SimScene> scenes = new ConcurrentHashMap<>();
+    //association group members per node and group, every device has a lifeline and a control group
+    private final Map<Integer, List<Short>> groups = new ConcurrentHashMap<>();
+    private static final String[] GROUP_LABELS = {"Lifeline", "On/Off Control"};
+    private static final short[] GROUP_SIZES = {1, 5};
+    //hops of the route to each node, a heal finds a shorter route; every hop adds HOP_DELAY
+    private final byte[] hops = new byte[256];
+    private static final long HOP_DELAY = 20; //milliseconds
+    private static final long HEAL_TIME = 2000; //milliseconds
+    private final boolean[] sleeping = new boolean[256];
+    private final boolean[] failed = new boolean[256];
+    private final boolean[] queried = new boolean[256];
+    private final boolean[] awake = new boolean[256];
+    private final long[] nextWake = new long[256]; //currentTimeMillis of each sleeping node's next wake-up
+    private final SimValue[] wakeInterval = new SimValue[256];
+    private final List<SimValue> valueList = new ArrayList<>();
+    private final List<SimValue> awakeValues = new ArrayList<>();
+    private final Map<Long, SimValue> values = new ConcurrentHashMap<>();
+    private final List<Handler<ZWaveEvent>> handlers = new CopyOnWriteArrayList<>();
+    private final Random random;
+    private final ScheduledExecutorService executor;
+    private volatile double changeRate;
+    private volatile String port;
+    private ScheduledFuture<?> generator;
+    private double changeBudget;
+    private long nextPoll;
+    private long pollCycle;
+    private volatile int pollInterval = 30000;
+    private boolean allQueried;
+
+    //nodes devices (at most 231) with valuesPerNode values each, changeRate value changes per
+    //second across the network and sleepingShare (0 to 1) of the devices asleep between wake-ups
+    public SimulatedManager(long homeId, int nodes, int valuesPerNode, double changeRate, double sleepingShare) {
+        this.homeId = homeId;
+        this.nodes = Math.max(0, Math.min(MAX_NODES, nodes));
+        this.changeRate = Math.max(0, changeRate);
+        this.random = new Random(homeId);
+        int sleepers = (int) Math.round(this.nodes * Math.max(0, Math.min(1, sleepingShare)));
+        for (int n = 0; n < this.nodes; n++) {
+            short nodeId = (short) (n + 2);
+            hops[nodeId] = (byte) (1 + random.nextInt(4));
+            for (short g = 1; g <= GROUP_LABELS.length; g++) {
+                List<Short> members = new CopyOnWriteArrayList<>();
+                if (g == 1) {
+                    members.add(CONTROLLER_NODE);
+                }
+                groups.put(groupKey(nodeId, g), members);
+            }
+            //spread the sleeping devices over the network
+            sleeping[nodeId] = (long) n * sleepers / this.nodes != (long) (n + 1) * sleepers / this.nodes;
+            for (int v = 0; v < valuesPerNode; v++) {
+                SimValue sv = createValue(nodeId, v);
+                valueList.add(sv);
+                values.put(ValuePoint.key(sv.valueId), sv);
+                if (!sleeping[nodeId]) {
+                    awakeValues.add(sv);
+                }
+            }
+            if (sleeping[nodeId]) {
+                SimValue sv = new SimValue(new ValueId(homeId, nodeId, ValueGenre.SYSTEM, CC_WAKE_UP, (short) 1,
+                        (short) 0, ValueType.INT), "Wake-up Interval", "Seconds", WAKE_INTERVAL);
+                valueList.add(sv);
+                values.put(ValuePoint.key(sv.valueId), sv);
+                wakeInterval[nodeId] = sv;
+            }
+        }
+        final String name = "zwave-sim-" + Long.toHexString(homeId);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    //a mix of the value types and command classes real devices report
+    private SimValue createValue(short nodeId, int v) {
+        String suffix = " " + (v / 6 + 1);
+        short index = (short) v;
+        switch (v % 6) {
+            case 0:
+                return new SimValue(new ValueId(homeId, nodeId, ValueGenre.USER, (short) 0x25, (short) 1, index,
+                        ValueType.BOOL), "Switch" + suffix, "", false);
+            case 1:
+                return new SimValue(new ValueId(homeId, nodeId, ValueGenre.USER, (short) 0x26, (short) 1, index,
+                        ValueType.BYTE), "Level" + suffix, "%", (short) 0);
+            case 2:
+                return new SimValue(new ValueId(homeId, nodeId, ValueGenre.USER, (short) 0x31, (short) 1, index,
+                        ValueType.DECIMAL), "Temperature" + suffix, "C", 21.0f);
+            case 3:
+                return new SimValue(new ValueId(homeId, nodeId, ValueGenre.USER, (short) 0x32, (short) 1, index,
+                        ValueType.INT), "Power" + suffix, "W", 0);
+            case 4:
+                return new SimValue(new ValueId(homeId, nodeId, ValueGenre.USER, (short) 0x40, (short) 1, index,
+                        ValueType.LIST), "Mode" + suffix, "", MODES.get(0));
+            default:
+                return new SimValue(new ValueId(homeId, nodeId, ValueGenre.CONFIG, (short) 0x70, (short) 1, index,
+                        ValueType.SHORT), "Parameter" + suffix, "", (short) 0);
+        }
+    }
+
+    public long getHomeId() {
+        return homeId;
+    }
+
+    //ids of all simulated values, in node order
+    public List<ValueId> getValueIds() {
+        List<ValueId> ids = new ArrayList<>(valueList.size());
+        for (SimValue sv : valueList) {
+            ids.add(sv.valueId);
+        }
+        return ids;
+    }
+
+    //give a value a new random reading without a notification, the caller reports the change itself
+    public void change(ValueId valueId) {
+        SimValue sv = find(valueId);
+        if (sv != null) {
+            sv.value = mutate(sv);
+        }
+    }
+
+    public double getChangeRate() {
+        return changeRate;
+    }
+
+    //value changes per second across the network, raise it to simulate a notification storm
+    public void setChangeRate(double changeRate) {
+        this.changeRate = Math.max(0, changeRate);
+    }
+
+    //a failed node stops answering: values no longer change, writes and tests time out
+    public void setNodeFailed(final short nodeId, final boolean nodeFailed) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (failed[nodeId & 0xFF] != nodeFailed) {
+                    failed[nodeId & 0xFF] = nodeFailed;
+                    emit(NotificationType.NOTIFICATION, nodeId, null, nodeFailed ? CODE_DEAD : CODE_ALIVE);
+                }
+            }
+        });
+    }
+
+    //stop the generator and the notification thread, the manager cannot be used afterwards
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void addEventHandler(Handler<ZWaveEvent> handler) {
+        handlers.add(handler);
+    }
+
+    private void emit(NotificationType type, short nodeId, ValueId valueId, short code) {
+        ZWaveEvent event = new ZWaveEvent(type, homeId, nodeId, valueId, (short) 0, (short) 0, (short) 0,
+                (short) 0, code, (short) 0, null);
+        for (Handler<ZWaveEvent> h : handlers) {
+            h.handle(event);
+        }
+    }
+
+    private void emitGroup(short nodeId, short groupIdx) {
+        ZWaveEvent event = new ZWaveEvent(NotificationType.GROUP, homeId, nodeId, null, groupIdx, (short) 0,
+                (short) 0, (short) 0, (short) 0, (short) 0, null);
+        for (Handler<ZWaveEvent> h : handlers) {
+            h.handle(event);
+        }
+    }
+
+    private void emitValue(NotificationType type, SimValue sv) {
+        emit(type, sv.valueId.getNodeId(), sv.valueId, (short) 0);
+    }
+
+    //report the network like OpenZWave does after the driver is added, then start the generator
+    @Override
+    public synchronized boolean addDriver(String port) {
+        if (this.port != null) {
+            return false;
+        }
+        this.port = port;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                startup();
+            }
+        });
+        return true;
+    }
+
+    private void startup() {
+        emit(NotificationType.DRIVER_READY, CONTROLLER_NODE, null, (short) 0);
+        emit(NotificationType.NODE_ADDED, CONTROLLER_NODE, null, (short) 0);
+        emit(NotificationType.NODE_QUERIES_COMPLETE, CONTROLLER_NODE, null, (short) 0);
+        short last = 0;
+        for (SimValue sv : valueList) {
+            short nodeId = sv.valueId.getNodeId();
+            if (nodeId != last) {
+                finishNode(last);
+                emit(NotificationType.NODE_ADDED, nodeId, null, (short) 0);
+                emit(NotificationType.NODE_PROTOCOL_INFO, nodeId, null, (short) 0);
+                last = nodeId;
+            }
+            emitValue(NotificationType.VALUE_ADDED, sv);
+        }
+        finishNode(last);
+        emit(NotificationType.AWAKE_NODES_QUERIED, CONTROLLER_NODE, null, (short) 0);
+        allQueried = !hasSleepers();
+        if (allQueried) {
+            emit(NotificationType.ALL_NODES_QUERIED, CONTROLLER_NODE, null, (short) 0);
+        }
+
+        long now = System.currentTimeMillis();
+        for (short nodeId = 2; nodeId < nodes + 2; nodeId++) {
+            //spread the first wake-ups over the interval
+            nextWake[nodeId] = now + random.nextInt(WAKE_INTERVAL * 1000);
+        }
+        nextPoll = now + pollInterval;
+        generator = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (Exception e) {
+                    LOGGER.error("Simulation failed", e);
+                }
+            }
+        }, TICK, TICK, TimeUnit.MILLISECONDS);
+        LOGGER.info("Simulated network {} ready, {} nodes, {} values",
+                Long.toHexString(homeId), nodes, valueList.size());
+    }
+
+    //sleeping nodes finish their interview on their first wake-up
+    private void finishNode(short nodeId) {
+        if (nodeId != 0 && !sleeping[nodeId]) {
+            queried[nodeId] = true;
+            emit(NotificationType.ESSENTIAL_NODE_QUERIES_COMPLETE, nodeId, null, (short) 0);
+            emit(NotificationType.NODE_QUERIES_COMPLETE, nodeId, null, (short) 0);
+        }
+    }
+
+    private boolean isAsleep(short nodeId) {
+        return sleeping[nodeId & 0xFF] && !awake[nodeId & 0xFF];
+    }
+
+    private boolean hasSleepers() {
+        for (boolean s : sleeping) {
+            if (s) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //generator, runs on the notification thread
+    private void tick() {
+        changeBudget += changeRate * TICK / 1000;
+        int changes = (int) changeBudget;
+        changeBudget -= changes;
+        for (int i = 0; i < changes && !awakeValues.isEmpty(); i++) {
+            SimValue sv = awakeValues.get(random.nextInt(awakeValues.size()));
+            if (failed[sv.valueId.getNodeId() & 0xFF]) {
+                continue;
+            }
+            sv.value = mutate(sv);
+            emitValue(NotificationType.VALUE_CHANGED, sv);
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= nextPoll) {
+            nextPoll = now + pollInterval;
+            pollCycle++;
+            for (SimValue sv : awakeValues) {
+                if (sv.pollIntensity > 0 && pollCycle % sv.pollIntensity == 0) {
+                    emitValue(NotificationType.VALUE_REFRESHED, sv);
+                }
+            }
+        }
+        boolean sleepers = false;
+        for (short nodeId = 2; nodeId < nodes + 2; nodeId++) {
+            if (!sleeping[nodeId] || failed[nodeId]) {
+                continue;
+            }
+            if (now >= nextWake[nodeId] && !awake[nodeId]) {
+                nextWake[nodeId] = now + Math.max(1, (Integer) wakeInterval[nodeId].value) * 1000L;
+                wakeUp(nodeId);
+            }
+            sleepers |= !queried[nodeId];
+        }
+        if (!allQueried && !sleepers) {
+            allQueried = true;
+            emit(NotificationType.ALL_NODES_QUERIED, CONTROLLER_NODE, null, (short) 0);
+        }
+    }
+
+    //a sleeping node wakes up, applies the writes queued for it, reports and stays awake for
+    //AWAKE_TIME so writes sent on its wake-up notification reach it before it sleeps again
+    private void wakeUp(final short nodeId) {
+        awake[nodeId] = true;
+        emit(NotificationType.NOTIFICATION, nodeId, null, CODE_AWAKE);
+        if (!queried[nodeId]) {
+            queried[nodeId] = true;
+            emit(NotificationType.ESSENTIAL_NODE_QUERIES_COMPLETE, nodeId, null, (short) 0);
+            emit(NotificationType.NODE_QUERIES_COMPLETE, nodeId, null, (short) 0);
+        }
+        for (SimValue sv : valueList) {
+            if (sv.valueId.getNodeId() != nodeId) {
+                continue;
+            }
+            Object pending = sv.pending;
+            if (pending != null) {
+                sv.pending = null;
+                sv.value = pending;
+                emitValue(NotificationType.VALUE_CHANGED, sv);
+            } else if (sv != wakeInterval[nodeId] && random.nextInt(4) == 0) {
+                sv.value = mutate(sv);
+                emitValue(NotificationType.VALUE_CHANGED, sv);
+            }
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                awake[nodeId] = false;
+                emit(NotificationType.NOTIFICATION, nodeId, null, CODE_SLEEP);
+            }
+        }, AWAKE_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    private Object mutate(SimValue sv) {
+        switch (sv.valueId.getType()) {
+            case BOOL:
+                return !(Boolean) sv.value;
+            case BYTE:
+                return (short) random.nextInt(100);
+            case DECIMAL:
+                return Math.round((21 + random.nextGaussian() * 2) * 10) / 10.0f;
+            case INT:
+                return random.nextInt(3000);
+            case LIST:
+                return MODES.get(random.nextInt(MODES.size()));
+            default:
+                return (short) random.nextInt(256);
+        }
+    }
+
+    @Override
+    public synchronized boolean removeDriver(String port) {
+        if (this.port == null || !this.port.equals(port)) {
+            return false;
+        }
+        this.port = null;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generator != null) {
+                    generator.cancel(false);
+                    generator = null;
+                }
+                emit(NotificationType.DRIVER_REMOVED, CONTROLLER_NODE, null, (short) 0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public String getControllerPath(long homeId) {
+        return homeId == this.homeId ? port : null;
+    }
+
+    @Override
+    public short getControllerNodeId(long homeId) {
+        return CONTROLLER_NODE;
+    }
+
+    @Override
+    public void writeConfig(long homeId) {
+    }
+
+    @Override
+    public boolean requestNodeState(long homeId, short nodeId) {
+        return homeId == this.homeId;
+    }
+
+    @Override
+    public boolean refreshNodeInfo(long homeId, short nodeId) {
+        return homeId == this.homeId;
+    }
+
+    @Override
+    public String getNodeProductName(long homeId, short nodeId) {
+        if (nodeId == CONTROLLER_NODE) {
+            return "Simulated Controller";
+        }
+        return sleeping[nodeId & 0xFF] ? "Simulated Sensor" : "Simulated Device";
+    }
+
+    @Override
+    public boolean isNodeFailed(long homeId, short nodeId) {
+        return failed[nodeId & 0xFF];
+    }
+
+    @Override
+    public boolean isNodeListeningDevice(long homeId, short nodeId) {
+        return !sleeping[nodeId & 0xFF];
+    }
+
+    @Override
+    public boolean isNodeFrequentListeningDevice(long homeId, short nodeId) {
+        return false;
+    }
+
+    //sleeping nodes wait in the WakeUp stage until their first wake-up
+    @Override
+    public String getNodeQueryStage(long homeId, short nodeId) {
+        if (nodeId == CONTROLLER_NODE || queried[nodeId & 0xFF]) {
+            return "Complete";
+        }
+        return sleeping[nodeId & 0xFF] ? "WakeUp" : "Probe";
+    }
+
+    //a failed node times out, any other node acknowledges the no-operation after its route delay
+    @Override
+    public void testNetworkNode(long homeId, final short nodeId, int count) {
+        long delay = failed[nodeId & 0xFF] ? 0 : routeDelay(nodeId);
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (failed[nodeId & 0xFF]) {
+                    emit(NotificationType.NOTIFICATION, nodeId, null, CODE_TIMEOUT);
+                } else {
+                    emit(NotificationType.NOTIFICATION, nodeId, null, CODE_NOOP);
+                    emit(NotificationType.NOTIFICATION, nodeId, null, CODE_ALIVE);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private long routeDelay(short nodeId) {
+        return Math.max(1, hops[nodeId & 0xFF]) * HOP_DELAY + random.nextInt(10);
+    }
+
+    @Override
+    public void switchAllOn(long homeId) {
+        switchAll(true);
+    }
+
+    @Override
+    public void switchAllOff(long homeId) {
+        switchAll(false);
+    }
+
+    private void switchAll(final boolean on) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (SimValue sv : awakeValues) {
+                    if (sv.valueId.getType() == ValueType.BOOL && !Boolean.valueOf(on).equals(sv.value)) {
+                        sv.value = on;
+                        emitValue(NotificationType.VALUE_CHANGED, sv);
+                    }
+                }
+            }
+        });
+    }
+
+    private SimValue find(ValueId valueId) {
+        return values.get(ValuePoint.key(valueId));
+    }
+
+    @Override
+    public String getValueLabel(ValueId valueId) {
+        SimValue sv = find(valueId);
+        return sv == null ? "" : sv.label;
+    }
+
+    @Override
+    public String getValueUnits(ValueId valueId) {
+        SimValue sv = find(valueId);
+        return sv == null ? "" : sv.units;
+    }
+
+    @Override
+    public boolean refreshValue(ValueId valueId) {
+        final SimValue sv = find(valueId);
+        if (sv == null || isAsleep(valueId.getNodeId())) {
+            return false;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                emitValue(NotificationType.VALUE_REFRESHED, sv);
+            }
+        });
+        return true;
+    }
+
+    //reads the current value if it has the requested type
+    @SuppressWarnings("unchecked")
+    private <T> boolean get(ValueId valueId, Class<T> type, AtomicReference<T> ref) {
+        SimValue sv = find(valueId);
+        if (sv == null || !type.isInstance(sv.value)) {
+            return false;
+        }
+        ref.set((T) sv.value);
+        return true;
+    }
+
+    //stores a write and confirms it with a value change, sleeping nodes apply it when they wake up
+    private boolean set(ValueId valueId, Object value) {
+        final SimValue sv = find(valueId);
+        if (sv == null || sv.value.getClass() != value.getClass()) {
+            return false;
+        }
+        if (isAsleep(valueId.getNodeId())) {
+            sv.pending = value;
+            return true;
+        }
+        if (failed[valueId.getNodeId() & 0xFF]) {
+            final short nodeId = valueId.getNodeId();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    emit(NotificationType.NOTIFICATION, nodeId, null, CODE_TIMEOUT);
+                }
+            });
+            return true;
+        }
+        sv.value = value;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                emitValue(NotificationType.VALUE_CHANGED, sv);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean getValueAsBool(ValueId valueId, AtomicReference<Boolean> value) {
+        return get(valueId, Boolean.class, value);
+    }
+
+    @Override
+    public boolean getValueAsByte(ValueId valueId, AtomicReference<Short> value) {
+        return valueId.getType() == ValueType.BYTE && get(valueId, Short.class, value);
+    }
+
+    @Override
+    public boolean getValueAsFloat(ValueId valueId, AtomicReference<Float> value) {
+        return get(valueId, Float.class, value);
+    }
+
+    @Override
+    public boolean getValueAsInt(ValueId valueId, AtomicReference<Integer> value) {
+        return get(valueId, Integer.class, value);
+    }
+
+    @Override
+    public boolean getValueAsShort(ValueId valueId, AtomicReference<Short> value) {
+        return valueId.getType() == ValueType.SHORT && get(valueId, Short.class, value);
+    }
+
+    @Override
+    public boolean getValueAsString(ValueId valueId, AtomicReference<String> value) {
+        SimValue sv = find(valueId);
+        if (sv == null) {
+            return false;
+        }
+        value.set(String.valueOf(sv.value));
+        return true;
+    }
+
+    @Override
+    public boolean getValueAsRaw(ValueId valueId, AtomicReference<short[]> value) {
+        return false;
+    }
+
+    @Override
+    public boolean getValueListSelectionString(ValueId valueId, AtomicReference<String> value) {
+        return valueId.getType() == ValueType.LIST && get(valueId, String.class, value);
+    }
+
+    @Override
+    public boolean getValueListItems(ValueId valueId, List<String> items) {
+        if (valueId.getType() != ValueType.LIST || find(valueId) == null) {
+            return false;
+        }
+        items.addAll(MODES);
+        return true;
+    }
+
+    @Override
+    public boolean setValueAsBool(ValueId valueId, boolean value) {
+        return set(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsByte(ValueId valueId, short value) {
+        return valueId.getType() == ValueType.BYTE && set(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsFloat(ValueId valueId, float value) {
+        return set(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsInt(ValueId valueId, int value) {
+        return set(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsShort(ValueId valueId, short value) {
+        return valueId.getType() == ValueType.SHORT && set(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsString(ValueId valueId, String value) {
+        return set(valueId, value);
+    }
+
+    @Override
+    public boolean setValueAsRaw(ValueId valueId, short[] value) {
+        return false;
+    }
+
+    @Override
+    public boolean setValueListSelection(ValueId valueId, String item) {
+        return valueId.getType() == ValueType.LIST && MODES.contains(item) && set(valueId, item);
+    }
+
+    @Override
+    public boolean enablePoll(ValueId valueId, short intensity) {
+        SimValue sv = find(valueId);
+        if (sv == null) {
+            return false;
+        }
+        sv.pollIntensity = (short) Math.max(1, intensity);
+        return true;
+    }
+
+    @Override
+    public boolean disablePoll(ValueId valueId) {
+        SimValue sv = find(valueId);
+        if (sv == null) {
+            return false;
+        }
+        sv.pollIntensity = 0;
+        return true;
+    }
+
+    @Override
+    public boolean isPolled(ValueId valueId) {
+        SimValue sv = find(valueId);
+        return sv != null && sv.pollIntensity > 0;
+    }
+
+    @Override
+    public void setPollIntensity(ValueId valueId, short intensity) {
+        SimValue sv = find(valueId);
+        if (sv != null && sv.pollIntensity > 0) {
+            sv.pollIntensity = (short) Math.max(1, intensity);
+        }
+    }
+
+    @Override
+    public short getPollIntensity(ValueId valueId) {
+        SimValue sv = find(valueId);
+        return sv == null ? 0 : sv.pollIntensity;
+    }
+
+    @Override
+    public void setPollInterval(int millis, boolean intervalBetweenPolls) {
+        pollInterval = Math.max(1000, millis);
+    }
+
+    @Override
+    public synchronized short createScene() {
+        for (short id = 1; id <= 255; id++) {
+            if (!scenes.containsKey(id)) {
+                scenes.put(id, new SimScene());
+                return id;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean removeScene(short sceneId) {
+        return scenes.remove(sceneId) != null;
+    }
+
+    @Override
+    public boolean sceneExists(short sceneId) {
+        return scenes.containsKey(sceneId);
+    }
+
+    //sets every value of the scene, like a user write to each of them
+    @Override
+    public boolean activateScene(short sceneId) {
+        SimScene scene = scenes.get(sceneId);
+        if (scene == null) {
+            return false;
+        }
+        for (Map.Entry<Long, Object> e : scene.values.entrySet()) {
+            SimValue sv = values.get(e.getKey());
+            if (sv != null) {
+                set(sv.valueId, e.getValue());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getSceneLabel(short sceneId) {
+        SimScene scene = scenes.get(sceneId);
+        return scene == null ? "" : scene.label;
+    }
+
+    @Override
+    public void setSceneLabel(short sceneId, String label) {
+        SimScene scene = scenes.get(sceneId);
+        if (scene != null) {
+            scene.label = label;
+        }
+    }
+
+    //stores the value if its type matches the data point, as set() would require
+    private boolean addSceneValue(short sceneId, ValueId valueId, Object value) {
+        SimScene scene = scenes.get(sceneId);
+        SimValue sv = find(valueId);
+        if (scene == null || sv == null || sv.value.getClass() != value.getClass()) {
+            return false;
+        }
+        scene.values.put(ValuePoint.key(valueId), value);
+        return true;
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, boolean value) {
+        return addSceneValue(sceneId, valueId, (Object) value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, float value) {
+        return addSceneValue(sceneId, valueId, (Object) value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, int value) {
+        return addSceneValue(sceneId, valueId, (Object) value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, short value) {
+        return addSceneValue(sceneId, valueId, (Object) value);
+    }
+
+    @Override
+    public boolean addSceneValue(short sceneId, ValueId valueId, String value) {
+        return addSceneValue(sceneId, valueId, (Object) value);
+    }
+
+    @Override
+    public boolean addSceneValueListSelection(short sceneId, ValueId valueId, String item) {
+        return valueId.getType() == ValueType.LIST && MODES.contains(item)
+                && addSceneValue(sceneId, valueId, (Object) item);
+    }
+
+    @Override
+    public boolean removeSceneValue(short sceneId, ValueId valueId) {
+        SimScene scene = scenes.get(sceneId);
+        return scene != null && scene.values.remove(ValuePoint.key(valueId)) != null;
+    }
+
+    private static int groupKey(short nodeId, short groupIdx) {
+        return (nodeId & 0xFF) << 8 | (groupIdx & 0xFF);
+    }
+
+    @Override
+    public short getNumGroups(long homeId, short nodeId) {
+        return groups.containsKey(groupKey(nodeId, (short) 1)) ? (short) GROUP_LABELS.length : 0;
+    }
+
+    @Override
+    public long getAssociations(long homeId, short nodeId, short groupIdx, AtomicReference<short[]> associations) {
+        List<Short> members = groups.get(groupKey(nodeId, groupIdx));
+        if (members == null) {
+            associations.set(new short[0]);
+            return 0;
+        }
+        Object[] ids = members.toArray();
+        short[] result = new short[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = (Short) ids[i];
+        }
+        associations.set(result);
+        return result.length;
+    }
+
+    @Override
+    public short getMaxAssociations(long homeId, short nodeId, short groupIdx) {
+        return groups.containsKey(groupKey(nodeId, groupIdx)) ? GROUP_SIZES[groupIdx - 1] : 0;
+    }
+
+    @Override
+    public String getGroupLabel(long homeId, short nodeId, short groupIdx) {
+        return groups.containsKey(groupKey(nodeId, groupIdx)) ? GROUP_LABELS[groupIdx - 1] : "";
+    }
+
+    @Override
+    public void addAssociation(long homeId, short nodeId, short groupIdx, short targetNodeId) {
+        changeAssociation(nodeId, groupIdx, targetNodeId, true);
+    }
+
+    @Override
+    public void removeAssociation(long homeId, short nodeId, short groupIdx, short targetNodeId) {
+        changeAssociation(nodeId, groupIdx, targetNodeId, false);
+    }
+
+    //the device confirms the change with a GROUP notification, a failed device times out
+    private void changeAssociation(final short nodeId, final short groupIdx, final short target, final boolean add) {
+        final List<Short> members = groups.get(groupKey(nodeId, groupIdx));
+        if (members == null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (failed[nodeId & 0xFF]) {
+                    emit(NotificationType.NOTIFICATION, nodeId, null, CODE_TIMEOUT);
+                    return;
+                }
+                if (add && !members.contains(target) && members.size() < GROUP_SIZES[groupIdx - 1]) {
+                    members.add(target);
+                } else if (!add) {
+                    members.remove(Short.valueOf(target));
+                }
+                emitGroup(nodeId, groupIdx);
+            }
+        });
+    }
+
+    //the nodes next to a node in the simulated mesh, laid out as a line behind the controller
+    @Override
+    public long getNodeNeighbors(long homeId, short nodeId, AtomicReference<short[]> neighbors) {
+        int id = nodeId & 0xFF;
+        if (id < CONTROLLER_NODE || id > nodes + 1) {
+            neighbors.set(new short[0]);
+            return 0;
+        }
+        List<Short> list = new ArrayList<>();
+        for (int n = id - 2; n <= id + 2; n++) {
+            if (n != id && n >= CONTROLLER_NODE && n <= nodes + 1 && !failed[n]) {
+                list.add((short) n);
+            }
+        }
+        short[] result = new short[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        neighbors.set(result);
+        return result.length;
+    }
+
+    //a heal takes a while and leaves the node one hop closer to the controller
+    @Override
+    public void healNetworkNode(long homeId, final short nodeId, boolean doReturnRoutes) {
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                int id = nodeId & 0xFF;
+                if (!failed[id] && hops[id] > 1) {
+                    hops[id]--;
+                }
+            }
+        }, HEAL_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void healNetwork(long homeId, boolean doReturnRoutes) {
+        for (short nodeId = 2; nodeId < nodes + 2; nodeId++) {
+            healNetworkNode(homeId, nodeId, doReturnRoutes);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.dsa.iot.zwave;
+
+//fixed size ring buffer of the recent readings of a data point
+//timestamps and values are kept in primitive arrays, booleans are stored as 0 and 1
+public class ValueHistory {
+
+    public static final int BYTES_PER_SAMPLE = 16;
+
+    private final long[] times;
+    private final double[] values;
+    private int next;
+    private int size;
+    private boolean released; //handed back to the HistoryBudget, guarded by the budget
+
+    public ValueHistory(int capacity) {
+        times = new long[capacity];
+        values = new double[capacity];
+    }
+
+    //returns false if the history was already released
+    public boolean markReleased() {
+        if (released) {
+            return false;
+        }
+        released = true;
+        return true;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public synchronized void add(long time, double value) {
+        times[next] = time;
+        values[next] = value;
+        next = next + 1 == times.length ? 0 : next + 1;
+        if (size < times.length) {
+            size++;
+        }
+    }
+
+    //copy the samples taken at or after since, oldest first, returns the number copied
+    //the arrays must hold getCapacity() samples
+    public synchronized int copy(long since, long[] t, double[] v) {
+        int start = next - size;
+        if (start < 0) {
+            start += times.length;
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int idx = start + i;
+            if (idx >= times.length) {
+                idx -= times.length;
+            }
+            if (times[idx] >= since) {
+                t[count] = times[idx];
+                v[count] = values[idx];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static long bytes(int capacity) {
+        return (long) capacity * BYTES_PER_SAMPLE;
+    }
+}
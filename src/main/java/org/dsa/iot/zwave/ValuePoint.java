@@ -0,0 +1,181 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.value.Value;
+import org.zwave4j.ValueGenre;
+import org.zwave4j.ValueId;
+import org.zwave4j.ValueType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//resolved metadata of a single ZWave data point
+//built once when the value is added so change notifications can find the DSA node
+//without calling back into OpenZWave for the label, and so user writes can go straight
+//to the typed Manager setter without rebuilding the ValueId from node attributes
+public class ValuePoint {
+
+    private final long key;
+    private final ValueId valueId;
+    private final Node node;
+    private final String name;
+    private final ValueType type;
+    private final ValueGenre genre;
+    private final String units;
+    private final ValueWriter writer;
+    private volatile boolean stale; //restored from the snapshot, not yet reported by OpenZWave
+    private volatile boolean subscribed; //a DSA client is subscribed to the node's value
+    private volatile Value value; //last reading, kept even while nobody is subscribed
+    private volatile boolean overridden; //a DSA write changed the node, the next reading is published
+    private final AtomicLong writeSent = new AtomicLong(); //nanoTime of the last unconfirmed write, 0 if none
+    private volatile long writeConfirmed; //nanoTime the last write was confirmed by a reading
+    private volatile ValueHistory history; //recent readings, null unless enabled
+
+    public ValuePoint(ValueId valueId, Node node, String name, String units) {
+        this.key = key(valueId);
+        this.valueId = valueId;
+        this.node = node;
+        this.name = name;
+        this.type = valueId.getType();
+        this.genre = valueId.getGenre();
+        this.units = units;
+        this.writer = ValueWriter.forType(type);
+    }
+
+    //packs the fields that identify a value within a network into a single long
+    //node id (8 bits), command class (8), instance (8), index (16), genre (4), type (4)
+    public static long key(ValueId valueId) {
+        return key(valueId.getNodeId(), valueId.getCommandClassId(), valueId.getInstance(),
+                valueId.getIndex(), valueId.getGenre().ordinal(), valueId.getType().ordinal());
+    }
+
+    public static long key(int nodeId, int cc, int instance, int index, int genre, int type) {
+        return ((long) (nodeId & 0xFF) << 40)
+                | ((long) (cc & 0xFF) << 32)
+                | ((long) (instance & 0xFF) << 24)
+                | ((long) (index & 0xFFFF) << 8)
+                | ((genre & 0xF) << 4)
+                | (type & 0xF);
+    }
+
+    //node id encoded in a key
+    public static short nodeId(long key) {
+        return (short) ((key >>> 40) & 0xFF);
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    public ValueId getValueId() {
+        return valueId;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ValueType getType() {
+        return type;
+    }
+
+    public ValueGenre getGenre() {
+        return genre;
+    }
+
+    public String getUnits() {
+        return units;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
+
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    public void setSubscribed(boolean subscribed) {
+        this.subscribed = subscribed;
+    }
+
+    public Value getValue() {
+        return value;
+    }
+
+    //the reading a new one is compared with, null after a DSA write so the device's answer is
+    //always published, even when it rejected the write and reports the old value
+    public Value getLastReading() {
+        return overridden ? null : value;
+    }
+
+    //a DSA write put a value on the node that the device has not reported yet
+    public void markOverridden() {
+        overridden = true;
+    }
+
+    //the write was dropped or rejected and nothing will answer it, show the last reading again
+    public void revert() {
+        Value last = value;
+        if (last != null) {
+            node.setValue(last);
+        }
+    }
+
+    public ValueHistory getHistory() {
+        return history;
+    }
+
+    public void setHistory(ValueHistory history) {
+        this.history = history;
+    }
+
+    //store a new reading, it is only pushed to the DSA node while someone is subscribed
+    public void setValue(Value value) {
+        this.value = value;
+        overridden = false;
+        ValueHistory h = history;
+        if (h != null && value != null) {
+            if (value.getNumber() != null) {
+                h.add(System.currentTimeMillis(), value.getNumber().doubleValue());
+            } else if (value.getBool() != null) {
+                h.add(System.currentTimeMillis(), value.getBool() ? 1 : 0);
+            }
+        }
+        if (subscribed) {
+            node.setValue(value);
+        }
+    }
+
+    public void markWriteSent(long nanos) {
+        writeSent.set(nanos);
+    }
+
+    //a reading received at the given nanoTime confirms the pending write if it is newer than it
+    //returns the round trip in nanoseconds, -1 if there is no write the reading confirms
+    //readings queued before the write leave it pending for the reading that answers it
+    public long confirmWrite(long received) {
+        long sent = writeSent.get();
+        if (sent == 0 || received - sent <= 0 || !writeSent.compareAndSet(sent, 0)) {
+            return -1;
+        }
+        writeConfirmed = received;
+        return received - sent;
+    }
+
+    public long getWriteConfirmed() {
+        return writeConfirmed;
+    }
+
+    //send a user-entered value to the device, returns false if OpenZWave rejected it
+    public boolean write(ZWaveManager manager, Value value) {
+        return writer.write(manager, valueId, value);
+    }
+}
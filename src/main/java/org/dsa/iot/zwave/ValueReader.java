@@ -0,0 +1,106 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.zwave4j.ValueId;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+//reads the current value of a data point from OpenZWave
+//the typed holders the Manager getters fill in are reused for every read, and a new Value is
+//only built when the reading differs from the last one stored on the point
+//one reader per connection, only used from the connection's notification dispatcher thread
+public class ValueReader {
+
+    private final AtomicReference<Boolean> bool = new AtomicReference<>();
+    private final AtomicReference<Short> shortValue = new AtomicReference<>();
+    private final AtomicReference<Float> floatValue = new AtomicReference<>();
+    private final AtomicReference<Integer> intValue = new AtomicReference<>();
+    private final AtomicReference<String> string = new AtomicReference<>();
+    private final AtomicReference<short[]> raw = new AtomicReference<>();
+
+    //the new reading of the point, null if it is unchanged or could not be read
+    public Value read(ZWaveManager manager, ValuePoint point) {
+        ValueId valueId = point.getValueId();
+        Value last = point.getLastReading();
+        switch (point.getType()) {
+            case BOOL:
+                bool.set(null);
+                manager.getValueAsBool(valueId, bool);
+                Boolean b = bool.get();
+                if (b == null || (last != null && b.equals(last.getBool()))) {
+                    return null;
+                }
+                return new Value(b);
+            case BYTE:
+                shortValue.set(null);
+                manager.getValueAsByte(valueId, shortValue);
+                return number(shortValue.get(), last);
+            case SHORT:
+                shortValue.set(null);
+                manager.getValueAsShort(valueId, shortValue);
+                return number(shortValue.get(), last);
+            case DECIMAL:
+                floatValue.set(null);
+                manager.getValueAsFloat(valueId, floatValue);
+                return number(floatValue.get(), last);
+            case INT:
+                intValue.set(null);
+                manager.getValueAsInt(valueId, intValue);
+                return number(intValue.get(), last);
+            case LIST:
+                string.set(null);
+                manager.getValueListSelectionString(valueId, string);
+                return string(string.get(), last);
+            case STRING:
+                string.set(null);
+                manager.getValueAsString(valueId, string);
+                return string(string.get(), last);
+            case RAW:
+                raw.set(null);
+                manager.getValueAsRaw(valueId, raw);
+                short[] shorts = raw.get();
+                if (shorts == null || (last != null && same(shorts, last.getArray()))) {
+                    return null;
+                }
+                JsonArray arr = new JsonArray();
+                for (short s : shorts) {
+                    arr.add(s);
+                }
+                return new Value(arr);
+            default:
+                return null;
+        }
+    }
+
+    private static Value number(Number n, Value last) {
+        if (n == null) {
+            return null;
+        }
+        if (last != null && last.getNumber() != null
+                && last.getNumber().doubleValue() == n.doubleValue()) {
+            return null;
+        }
+        return new Value(n);
+    }
+
+    private static Value string(String s, Value last) {
+        if (s == null || (last != null && s.equals(last.getString()))) {
+            return null;
+        }
+        return new Value(s);
+    }
+
+    private static boolean same(short[] shorts, JsonArray last) {
+        if (last == null || last.size() != shorts.length) {
+            return false;
+        }
+        for (int i = 0; i < shorts.length; i++) {
+            Object o = last.get(i);
+            if (!(o instanceof Number) || ((Number) o).intValue() != shorts[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,190 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zwave4j.ValueId;
+import org.zwave4j.ValueType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//typed writers for each org.zwave4j.ValueType
+//resolved once per data point so a user write goes straight to the matching Manager setter
+public enum ValueWriter {
+
+    BOOL {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueAsBool(valueId, value.getBool());
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            return value.getBool() == null ? "expected a boolean" : null;
+        }
+    },
+    BYTE {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueAsByte(valueId, (short) (value.getNumber().intValue() & 0xFF));
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            return range(value, 0, 255);
+        }
+    },
+    DECIMAL {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueAsFloat(valueId, value.getNumber().floatValue());
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            if (value.getNumber() == null) {
+                return "expected a number";
+            }
+            float f = value.getNumber().floatValue();
+            return Float.isNaN(f) || Float.isInfinite(f) ? "out of range" : null;
+        }
+    },
+    INT {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueAsInt(valueId, value.getNumber().intValue());
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            return range(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+    },
+    LIST {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueListSelection(valueId, value.getString());
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            if (value.getString() == null) {
+                return "expected a list item";
+            }
+            List<String> items = new ArrayList<>();
+            if (manager.getValueListItems(valueId, items) && !items.contains(value.getString())) {
+                return "not one of " + items;
+            }
+            return null;
+        }
+    },
+    SHORT {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueAsShort(valueId, value.getNumber().shortValue());
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            return range(value, Short.MIN_VALUE, Short.MAX_VALUE);
+        }
+    },
+    STRING {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            return manager.setValueAsString(valueId, value.getString());
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            return value.getString() == null ? "expected a string" : null;
+        }
+    },
+    RAW {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            JsonArray entryJson = value.getArray();
+            short[] shorts = new short[entryJson.size()];
+            for (int i = 0; i < shorts.length; i++) {
+                Number n = entryJson.get(i);
+                shorts[i] = n.shortValue();
+            }
+            return manager.setValueAsRaw(valueId, shorts);
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            if (value.getArray() == null) {
+                return "expected an array of bytes";
+            }
+            for (Object o : value.getArray()) {
+                if (!(o instanceof Number) || ((Number) o).intValue() < 0 || ((Number) o).intValue() > 255) {
+                    return "expected an array of bytes";
+                }
+            }
+            return null;
+        }
+    },
+    //SCHEDULE and BUTTON are not implemented (devices that use these types were not
+    //available during development)
+    UNSUPPORTED {
+        @Override
+        public boolean write(ZWaveManager manager, ValueId valueId, Value value) {
+            LOGGER.error("Setting an unimplemented ZWave data type - " + valueId.getType());
+            return false;
+        }
+
+        @Override
+        public String check(ZWaveManager manager, ValueId valueId, Value value) {
+            return "writing " + valueId.getType() + " values is not supported";
+        }
+    };
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(ValueWriter.class);
+    }
+
+    //send the value to the device, returns false if OpenZWave rejected it
+    public abstract boolean write(ZWaveManager manager, ValueId valueId, Value value);
+
+    //reason the value cannot be written to the data point, null if it can
+    public abstract String check(ZWaveManager manager, ValueId valueId, Value value);
+
+    private static String range(Value value, long min, long max) {
+        if (value.getNumber() == null) {
+            return "expected a number";
+        }
+        double d = value.getNumber().doubleValue();
+        if (Double.isNaN(d) || d < min || d > max) {
+            return "out of range " + min + " to " + max;
+        }
+        return null;
+    }
+
+    public static ValueWriter forType(ValueType type) {
+        switch (type) {
+            case BOOL:
+                return BOOL;
+            case BYTE:
+                return BYTE;
+            case DECIMAL:
+                return DECIMAL;
+            case INT:
+                return INT;
+            case LIST:
+                return LIST;
+            case SHORT:
+                return SHORT;
+            case STRING:
+                return STRING;
+            case RAW:
+                return RAW;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+}
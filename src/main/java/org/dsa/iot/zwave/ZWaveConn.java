@@ -8,16 +8,25 @@ import org.dsa.iot.dslink.node.Writable;
 import org.dsa.iot.dslink.node.actions.Action;
 import org.dsa.iot.dslink.node.actions.ActionResult;
 import org.dsa.iot.dslink.node.actions.Parameter;
+import org.dsa.iot.dslink.node.actions.ResultType;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
 import org.dsa.iot.dslink.node.value.*;
 import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.Objects;
+import org.dsa.iot.dslink.util.json.JsonArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.dsa.iot.dslink.util.handler.Handler;
 import org.zwave4j.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ZWaveConn {
 
@@ -27,33 +36,171 @@ public class ZWaveConn {
 		LOGGER = LoggerFactory.getLogger(ZWaveConn.class);
 	}
 
-	private final Map<String, ZWaveDevice> devices = new HashMap<>(); //stores the device information
+	private final DeviceRegistry devices = new DeviceRegistry(); //stores the device information
+    //resolved data points keyed by ValuePoint.key(), only used from the dispatcher thread
+    private final LongMap<ValuePoint> valuePoints = new LongMap<>(1024);
 	private Node node;
     private ZWaveLink link;
 	private long homeId;
-    private final Manager manager = Manager.create();
-	private NotificationWatcher watcher;
-    private static boolean watcherAdded = false;
+    private final NotificationRouter router;
+    private final ZWaveManager manager;
 	private String controllerPort;
     private Short controllerNode;
+    private final NotificationDispatcher dispatcher;
+    private final CommandQueue commandQueue;
+    private final ValueReader valueReader = new ValueReader(); //dispatcher thread only
+
+    //steps of an asynchronous controller restart
+    private enum RestartState {
+        IDLE, REMOVING, ADDING
+    }
+
+    private static final long RESTART_STEP_TIMEOUT = 30; //seconds
+    private final Object restartLock = new Object();
+    private RestartState restartState = RestartState.IDLE;
+    private ScheduledFuture<?> restartTimeout;
+    private boolean stopped; //deleted, guarded by restartLock
+    private volatile boolean driverLoaded;
+    private ZWaveScenes scenes;
+    private InterviewTracker interview;
+    private ZWaveMesh mesh;
+    private ScheduledFuture<?> meshFuture;
+
+    private static final long MAX_BATCH_WAIT = 30; //seconds
+    private static final long SNAPSHOT_INTERVAL = 5; //minutes
+    private static final long PROBE_CHECK_INTERVAL = 15; //seconds
+    private static final long MESH_TICK = 5; //seconds
+    //codes of NOTIFICATION notifications
+    private static final short CODE_TIMEOUT = 1;
+    private static final short CODE_NOOP = 2;
+    private static final short CODE_AWAKE = 3;
+    private static final short CODE_SLEEP = 4;
+    private static final short CODE_DEAD = 5;
+    private static final short CODE_ALIVE = 6;
+    private ScheduledFuture<?> probeFuture;
+    private ScheduledFuture<?> snapshotFuture;
+    private long restoredHomeId;
+    private ScheduledFuture<?> queueStatsFuture;
+    private volatile boolean refreshOnSubscribe;
+    private final ConnMetrics metrics = new ConnMetrics();
+    private final int[] parkedCounts = new int[256]; //stats task only
+    private final long[] lastNotificationCounts = new long[ConnMetrics.getTypes().length];
+    private long lastMetricsUpdate;
 
 	public ZWaveConn(ZWaveLink link, Node node) {
 		this.node = node;
         this.link = link;
+        if (node.getAttribute("simulated") != null) {
+            router = new NotificationRouter(simulatedManager());
+        } else {
+            router = link.getRouter();
+        }
+        this.manager = router != null ? router.getManager() : null;
+
+        int capacity = NotificationDispatcher.DEFAULT_CAPACITY;
+        Value cap = node.getAttribute("queue capacity");
+        if (cap != null && cap.getNumber() != null) {
+            capacity = cap.getNumber().intValue();
+        }
+        NotificationDispatcher.OverflowPolicy policy = NotificationDispatcher.OverflowPolicy.DROP_NEWEST;
+        Value pol = node.getAttribute("overflow policy");
+        if (pol != null) {
+            try {
+                policy = NotificationDispatcher.OverflowPolicy.valueOf(pol.getString());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Unknown overflow policy {}, using {}", pol.getString(), policy);
+            }
+        }
+        dispatcher = new NotificationDispatcher(node.getName(), capacity, policy, new Handler<ZWaveEvent>() {
+            @Override
+            public void handle(ZWaveEvent event) {
+                dispatch(event);
+            }
+        });
+        Value window = node.getAttribute("coalesce window");
+        if (window != null && window.getNumber() != null) {
+            dispatcher.setCoalesceWindow(window.getNumber().longValue());
+        }
+
+        commandQueue = new CommandQueue(node.getName(), manager, CommandQueue.DEFAULT_CAPACITY);
+        double rate = CommandQueue.DEFAULT_RATE;
+        long nodeInterval = CommandQueue.DEFAULT_NODE_INTERVAL;
+        Value r = node.getAttribute("write rate");
+        if (r != null && r.getNumber() != null) {
+            rate = r.getNumber().doubleValue();
+        }
+        Value ni = node.getAttribute("node write interval");
+        if (ni != null && ni.getNumber() != null) {
+            nodeInterval = ni.getNumber().longValue();
+        }
+        commandQueue.setLimits(rate, nodeInterval);
+
+        Value ros = node.getAttribute("refresh on subscribe");
+        refreshOnSubscribe = ros != null && ros.getBool() != null && ros.getBool();
 	}
 
+    //in-memory network described by the connection's attributes
+    private SimulatedManager simulatedManager() {
+        long simHomeId = 0x5A000000L | (node.getName().hashCode() & 0xFFFFFF);
+        return new SimulatedManager(simHomeId, (int) numberAttribute("sim nodes", 20),
+                (int) numberAttribute("sim values", 10), numberAttribute("sim change rate", 10),
+                numberAttribute("sim sleeping", 10) / 100);
+    }
+
+    private double numberAttribute(String name, double def) {
+        Value v = node.getAttribute(name);
+        return v != null && v.getNumber() != null ? v.getNumber().doubleValue() : def;
+    }
+
     public long getHomeId() {
         return homeId;
     }
 
-    public Manager getManager() {
+    public ZWaveManager getManager() {
         return manager;
     }
 
-    public Map<String, ZWaveDevice> getDevices() {
+    public DeviceRegistry getDevices() {
         return devices;
     }
 
+    public NotificationDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public CommandQueue getCommandQueue() {
+        return commandQueue;
+    }
+
+    public LongMap<ValuePoint> getValuePoints() {
+        return valuePoints;
+    }
+
+    public ValueReader getValueReader() {
+        return valueReader;
+    }
+
+    public InterviewTracker getInterview() {
+        return interview;
+    }
+
+    public ConnMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PollScheduler getPollScheduler() {
+        return link.getPollScheduler();
+    }
+
+    public HistoryBudget getHistoryBudget() {
+        return link.getHistoryBudget();
+    }
+
+    //whether a new subscription to a data point asks the device for a fresh reading
+    public boolean isRefreshOnSubscribe() {
+        return refreshOnSubscribe;
+    }
+
     //create and build the manager object
     @SuppressFBWarnings("ST")
     public void start() {
@@ -64,15 +211,73 @@ public class ZWaveConn {
             b.setWritable(Writable.NEVER);
             b.build();
         }
+        {
+            NodeBuilder b = node.createChild("Refresh On Subscribe");
+            b.setValueType(ValueType.BOOL);
+            b.setValue(new Value(refreshOnSubscribe));
+            b.setWritable(Writable.WRITE);
+            b.setSerializable(false);
+            b.getListener().setValueHandler(new RefreshOnSubscribeHandler());
+            b.build();
+        }
+        if (manager == null) {
+            setStatus("Native library not available");
+            addActions();
+            return;
+        }
+        if (manager instanceof SimulatedManager) {
+            node.createChild("Set Change Rate").setAction(changeRateAction()).setSerializable(false).build();
+            Action failAct = new Action(Permission.WRITE, new NodeFailedHandler());
+            failAct.addParameter(new Parameter("Node ID", ValueType.NUMBER));
+            failAct.addParameter(new Parameter("Failed", ValueType.BOOL, new Value(true)));
+            node.createChild("Set Node Failed").setAction(failAct).setSerializable(false).build();
+        }
+        if (interview == null) {
+            interview = new InterviewTracker(this, node);
+        }
+        initQueueNodes();
+        if (scenes == null) {
+            scenes = new ZWaveScenes(this, node);
+        }
+        if (mesh == null) {
+            mesh = new ZWaveMesh(this, node);
+        }
+        dispatcher.start();
+        commandQueue.start();
+
+        restoreSnapshot();
+        if (probeFuture == null) {
+            probeFuture = Objects.getDaemonThreadPool().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    probeDeadNodes();
+                }
+            }, PROBE_CHECK_INTERVAL, PROBE_CHECK_INTERVAL, TimeUnit.SECONDS);
+        }
+        if (meshFuture == null) {
+            meshFuture = Objects.getDaemonThreadPool().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mesh.tick();
+                    } catch (Exception e) {
+                        LOGGER.warn("Heal scheduler failed", e);
+                    }
+                }
+            }, MESH_TICK, MESH_TICK, TimeUnit.SECONDS);
+        }
+        if (snapshotFuture == null) {
+            snapshotFuture = Objects.getDaemonThreadPool().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    saveSnapshot();
+                }
+            }, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.MINUTES);
+        }
 
         controllerPort = node.getAttribute("comm port id").getString();
+        router.expect(this, controllerPort);
         manager.addDriver(controllerPort);
-        init();
-        //the if statement is needed so that a second watcher isn't attached to the manager on restarts
-        if (!watcherAdded) {
-            manager.addWatcher(watcher, null);
-            watcherAdded = true;
-        }
         LOGGER.info("Manager created");
     }
 
@@ -80,150 +285,670 @@ public class ZWaveConn {
     //if any nodes were added while the application is running (which requires the stick to be removed
     //from the USB port as per ZWave standard), this restarts the connection with the USB stick.
     //This is the only way I have found to add the new node to the tree without restarting the application
-    @SuppressFBWarnings("SWL")
+    //the restart runs as a state machine driven by the driver notifications, so the calling
+    //action thread returns right away: remove the driver, wait for DRIVER_REMOVED, add the
+    //driver, wait for DRIVER_READY, then request the controller's node state
     protected void restart() {
-        removeActions();
-        NodeBuilder b = node.createChild("Status");
-        b.setValueType(ValueType.STRING);
-        b.setValue(new Value("Loading"));
-        b.build();
+        restart(controllerPort);
+    }
+
+    //restart, removing the driver of the given (previous) port first
+    private void restart(String oldPort) {
+        if (manager == null) {
+            return;
+        }
         //do NOT use manager.removeWatcher(watcher) or Manager.destroy()
         //these two functions cause a JVM crash due to native method call errors
-        synchronized (manager) {
-            try {
-                manager.removeDriver(controllerPort);
-                manager.addDriver(controllerPort);
-                Thread.sleep(2000); //needed to prevent the application from crashing
-                // without the sleep above, this next line causes a crash
-                manager.requestNodeState(homeId, controllerNode);
-            } catch (InterruptedException e) {
-                LOGGER.error("Sleep error - {}" + e);
-            } catch (Exception e) {
-                LOGGER.error("Manager handling error - {}", e);
+        //(the single watcher is owned by the NotificationRouter)
+        synchronized (restartLock) {
+            if (stopped) {
+                return;
+            }
+            if (restartState != RestartState.IDLE) {
+                LOGGER.warn("Restart already in progress ({})", restartState);
+                return;
             }
+            removeActions();
+            if (!driverLoaded) {
+                //no driver to wait for, a controller that never became ready sends no DRIVER_REMOVED
+                manager.removeDriver(oldPort);
+                addDriverStep();
+                return;
+            }
+            restartState = RestartState.REMOVING;
+            setStatus("Restarting - removing driver");
+            scheduleRestartTimeout();
+            manager.removeDriver(oldPort);
         }
     }
 
+    //second step of the restart, add the driver for the current port
+    private void addDriverStep() {
+        restartState = RestartState.ADDING;
+        setStatus("Restarting - adding driver");
+        scheduleRestartTimeout();
+        router.expect(this, controllerPort);
+        manager.addDriver(controllerPort);
+    }
+
+    //fail the current restart step if its notification does not arrive in time
+    private void scheduleRestartTimeout() {
+        cancelRestartTimeout();
+        final RestartState step = restartState;
+        restartTimeout = Objects.getDaemonThreadPool().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (restartLock) {
+                    //the connection may have been deleted after the timeout was scheduled
+                    if (stopped || restartState != step) {
+                        return;
+                    }
+                    if (step == RestartState.REMOVING) {
+                        LOGGER.warn("Timed out waiting for driver removal, adding driver");
+                        driverLoaded = false;
+                        addDriverStep();
+                    } else {
+                        LOGGER.error("Timed out waiting for driver on {}", controllerPort);
+                        restartState = RestartState.IDLE;
+                        setStatus("Restart failed - no controller response on " + controllerPort);
+                    }
+                }
+            }
+        }, RESTART_STEP_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private void cancelRestartTimeout() {
+        if (restartTimeout != null) {
+            restartTimeout.cancel(false);
+            restartTimeout = null;
+        }
+    }
+
+    //file the device snapshot of this connection is kept in
+    private File snapshotFile() {
+        String name = node.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File("zwave-snapshot", name + ".bin");
+    }
+
+    //rebuild the devices and their last readings from the snapshot of the previous session
+    //the readings stay marked stale until OpenZWave reports them again
+    private void restoreSnapshot() {
+        DeviceSnapshot snapshot;
+        try {
+            snapshot = DeviceSnapshot.read(snapshotFile());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read device snapshot - {}", e.getMessage());
+            return;
+        }
+        if (snapshot == null) {
+            return;
+        }
+        restoredHomeId = snapshot.getHomeId();
+        int values = 0;
+        for (DeviceSnapshot.Device d : snapshot.getDevices()) {
+            ZWaveDevice zwd = devices.get(d.getNodeId());
+            if (zwd == null) {
+                String nid = String.valueOf(d.getNodeId());
+                NodeBuilder b = node.createChild(nid);
+                b.setDisplayName(d.getDisplayName());
+                Value val = new Value(nid);
+                b.setAttribute("nodeId", val);
+                b.setAttribute("pathName", val);
+                Node child = b.build();
+                zwd = new ZWaveDevice(node, child, this, d.getNodeId());
+                devices.put(d.getNodeId(), zwd);
+                zwd.initHealth();
+                child.createChild("Rename").setAction(zwd.setNameAction()).build().setSerializable(false);
+            }
+            for (DeviceSnapshot.Point p : d.getPoints()) {
+                zwd.restorePoint(p);
+                values++;
+            }
+        }
+        LOGGER.info("Restored {} devices with {} values from snapshot", snapshot.getDevices().size(), values);
+    }
+
+    //write the current devices and readings so the next start can show them right away
+    private void saveSnapshot() {
+        if (homeId == 0) {
+            return;
+        }
+        try {
+            DeviceSnapshot.write(snapshotFile(), homeId, devices.snapshot());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to write device snapshot - {}", e.getMessage());
+        }
+    }
+
+    //drop the restored devices, the controller is not the one the snapshot was taken from
+    private void discardSnapshot() {
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            zwd.clearPoints();
+            devices.remove(zwd.getNodeId(), zwd);
+            node.removeChild(zwd.getName());
+        }
+        restoredHomeId = 0;
+    }
+
+    //mark a device dead if the controller lists it as failed
+    private void checkHealth(short nodeId) {
+        ZWaveDevice zwd = devices.get(nodeId);
+        if (zwd == null) {
+            return;
+        }
+        zwd.setQueryStage(manager.getNodeQueryStage(homeId, nodeId));
+        if (manager.isNodeFailed(homeId, nodeId)) {
+            zwd.setDead(true);
+        }
+    }
+
+    //send a no-operation to dead devices so an answer brings them back (NOTIFICATION Alive)
+    private void probeDeadNodes() {
+        if (homeId == 0 || !driverLoaded) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            if (zwd.probeDue(now)) {
+                LOGGER.info("Probing dead node {}", zwd.getNodeId());
+                try {
+                    manager.testNetworkNode(homeId, zwd.getNodeId(), 1);
+                } catch (Exception e) {
+                    LOGGER.warn("Probe of node {} failed - {}", zwd.getNodeId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    //helper method to update the connection's Status node
+    private void setStatus(String status) {
+        Node child = node.getChild("Status");
+        child.setValueType(ValueType.STRING);
+        child.setValue(new Value(status));
+        child.setWritable(Writable.NEVER);
+    }
+
     private void stop() {
         //do NOT use Manager.destroy() - see restart() for further info
         manager.removeDriver(controllerPort);
     }
 
-    //create the watcher that receives device notifications
-	private void init() {
-        watcher = new NotificationWatcher() {
-            @Override
-            public void onNotification(Notification notification, Object context) {
-            switch (notification.getType()) {
-                case DRIVER_READY:
-                    driverReady(notification);
-                    break;
-                case DRIVER_FAILED:
-                    driverFailed();
-                    break;
-                case DRIVER_RESET:
-                    driverReset();
-                    break;
-                case DRIVER_REMOVED:
-                    driverRemoved();
-                    break;
-                case AWAKE_NODES_QUERIED:
-                    awakeNodesQueried();
-                    break;
-                case ALL_NODES_QUERIED:
-                    allNodesQueried();
-                    break;
-                case ALL_NODES_QUERIED_SOME_DEAD:
-                    allNodesQueriedSomeDead();
-                    break;
-                case POLLING_ENABLED:
-                    pollingEnabled(notification);
-                    break;
-                case POLLING_DISABLED:
-                    pollingDisabled(notification);
-                    break;
-                case NODE_NEW:
-                    nodeNew(notification);
-                    break;
-                case NODE_ADDED:
-                    nodeAdded(notification);
-                    break;
-                case NODE_REMOVED:
-                    nodeRemoved(notification);
-                    break;
-                case ESSENTIAL_NODE_QUERIES_COMPLETE:
-                    essentialNodeQueriesComplete(notification);
-                    break;
-                case NODE_QUERIES_COMPLETE:
-                    nodeQueriesComplete(notification);
-                    break;
-                case NODE_EVENT:
-                    nodeEvent(notification);
-                    break;
-                case NODE_NAMING:
-                    nodeNaming(notification);
-                    break;
-                case NODE_PROTOCOL_INFO:
-                    nodeProtocolInfo(notification);
-                    break;
-                case VALUE_ADDED:
-                    valueAdded(notification);
-                    break;
-                case VALUE_REMOVED:
-                    valueRemoved(notification);
-                    break;
-                case VALUE_CHANGED:
-                    valueChanged(notification);
-                    break;
-                case VALUE_REFRESHED:
-                    valueRefreshed(notification);
-                    break;
-                case GROUP:
-                    group(notification);
-                    break;
-                case SCENE_EVENT:
-                    sceneEvent(notification);
-                    break;
-                case CREATE_BUTTON:
-                    createButton(notification);
-                    break;
-                case DELETE_BUTTON:
-                    deleteButton(notification);
-                    break;
-                case BUTTON_ON:
-                    buttonOn(notification);
-                    break;
-                case BUTTON_OFF:
-                    buttonOff(notification);
-                    break;
-                case NOTIFICATION:
-                    note(notification);
-                    break;
-                case CONTROLLER_COMMAND:
-                    controllerCommand(notification);
-                    break;
-                case NOT_SUPPORTED:
-                    LOGGER.error("NON_SUPPORTED notification type");
-                    break;
-                default:
-                    LOGGER.error("NotificationWatcher default - unknown notification type: "
-                            + notification.getType().name());
-                    break;
-            }
-            }
-        };
+    //build the nodes that report the state of the notification queue
+    private void initQueueNodes() {
+        NodeBuilder qb = node.createChild("Notification Queue");
+        qb.setSerializable(false);
+        Node queue = qb.build();
+
+        String[] counters = {"Depth", "High Water Mark", "Dropped", "Received", "Coalesced"};
+        for (String name : counters) {
+            NodeBuilder b = queue.createChild(name);
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(0));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        {
+            NodeBuilder b = queue.createChild("Capacity");
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(dispatcher.getCapacity()));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        {
+            Set<String> policies = new HashSet<>();
+            for (NotificationDispatcher.OverflowPolicy p : NotificationDispatcher.OverflowPolicy.values()) {
+                policies.add(p.name());
+            }
+            NodeBuilder b = queue.createChild("Overflow Policy");
+            b.setValueType(ValueType.makeEnum(policies));
+            b.setValue(new Value(dispatcher.getPolicy().name()));
+            b.setWritable(Writable.WRITE);
+            b.setSerializable(false);
+            b.getListener().setValueHandler(new OverflowPolicyHandler());
+            b.build();
+        }
+        {
+            NodeBuilder b = queue.createChild("Coalescing Window");
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(dispatcher.getCoalesceWindow()));
+            b.setAttribute("unit", new Value("ms"));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        queue.createChild("Set Coalescing").setAction(coalescingAction()).setSerializable(false).build();
+
+        NodeBuilder wb = node.createChild("Write Queue");
+        wb.setSerializable(false);
+        Node writes = wb.build();
+        String[] writeCounters = {"Depth", "Merged", "Dropped", "Sent", "Rejected", "Parked", "Refreshes"};
+        for (String name : writeCounters) {
+            NodeBuilder b = writes.createChild(name);
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(0));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        {
+            NodeBuilder b = writes.createChild("Commands Per Second");
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(commandQueue.getRate()));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        {
+            NodeBuilder b = writes.createChild("Node Interval");
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(commandQueue.getNodeInterval()));
+            b.setAttribute("unit", new Value("ms"));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        writes.createChild("Set Write Limits").setAction(writeLimitsAction()).setSerializable(false).build();
+
+        initMetricsNodes();
+
+        if (queueStatsFuture == null) {
+            queueStatsFuture = Objects.getDaemonThreadPool().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    updateQueueNodes();
+                    updateMetricsNodes();
+                    if (interview != null) {
+                        interview.publish();
+                    }
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    //publish the current queue counters
+    private void updateQueueNodes() {
+        Node queue = node.getChild("Notification Queue");
+        if (queue == null) {
+            return;
+        }
+        setCounter(queue, "Depth", dispatcher.getDepth());
+        setCounter(queue, "High Water Mark", dispatcher.getHighWaterMark());
+        setCounter(queue, "Dropped", dispatcher.getDropped());
+        setCounter(queue, "Received", dispatcher.getReceived());
+        setCounter(queue, "Coalesced", dispatcher.getCoalesced());
+
+        Node writes = node.getChild("Write Queue");
+        if (writes == null) {
+            return;
+        }
+        setCounter(writes, "Depth", commandQueue.getDepth());
+        setCounter(writes, "Merged", commandQueue.getMerged());
+        setCounter(writes, "Dropped", commandQueue.getDropped());
+        setCounter(writes, "Sent", commandQueue.getSent());
+        setCounter(writes, "Rejected", commandQueue.getRejected());
+        setCounter(writes, "Parked", commandQueue.getParked((short) 0));
+        setCounter(writes, "Refreshes", commandQueue.getRefreshes());
+        commandQueue.getParked(parkedCounts);
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            zwd.setPendingCommands(parkedCounts[zwd.getNodeId() & 0xFF]);
+        }
+    }
+
+    //build the Metrics subtree
+    private void initMetricsNodes() {
+        NodeBuilder mb = node.createChild("Metrics");
+        mb.setSerializable(false);
+        Node m = mb.build();
+        m.createChild("Notification Counts").setSerializable(false).build();
+        m.createChild("Notification Rates").setSerializable(false).build();
+        String[] counters = {"Unknown Notifications", "Unsupported Notifications", "Unsupported Values"};
+        for (String name : counters) {
+            metricNode(m, name, null);
+        }
+        Node latency = m.createChild("Handler Latency").setSerializable(false).build();
+        String[] handlers = {"Value Added", "Value Changed", "Node Added", "Queue Wait"};
+        for (String name : handlers) {
+            histogramNode(latency, name);
+        }
+        m.createChild("Write Round Trip").setSerializable(false).build();
+        lastMetricsUpdate = System.nanoTime();
+    }
+
+    //node holding the summary of a latency histogram
+    private Node histogramNode(Node parent, String name) {
+        Node h = parent.createChild(name).setSerializable(false).build();
+        metricNode(h, "Count", null);
+        String[] stats = {"Mean", "P50", "P99", "Max"};
+        for (String stat : stats) {
+            metricNode(h, stat, "us");
+        }
+        return h;
+    }
+
+    private void metricNode(Node parent, String name, String unit) {
+        NodeBuilder b = parent.createChild(name);
+        b.setValueType(ValueType.NUMBER);
+        b.setValue(new Value(0));
+        if (unit != null) {
+            b.setAttribute("unit", new Value(unit));
+        }
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+    }
+
+    //publish the metrics, nodes for notification types and devices are added once they are seen
+    private void updateMetricsNodes() {
+        Node m = node.getChild("Metrics");
+        if (m == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        double seconds = (now - lastMetricsUpdate) / 1e9;
+        lastMetricsUpdate = now;
+
+        Node counts = m.getChild("Notification Counts");
+        Node rates = m.getChild("Notification Rates");
+        for (NotificationType type : ConnMetrics.getTypes()) {
+            long count = metrics.getNotifications(type);
+            long delta = count - lastNotificationCounts[type.ordinal()];
+            lastNotificationCounts[type.ordinal()] = count;
+            if (count == 0) {
+                continue;
+            }
+            if (!counts.hasChild(type.name())) {
+                metricNode(counts, type.name(), null);
+                metricNode(rates, type.name(), "/s");
+            }
+            setCounter(counts, type.name(), count);
+            Node rate = rates.getChild(type.name());
+            double r = seconds > 0 ? Math.round(delta / seconds * 10) / 10.0 : 0;
+            Value current = rate.getValue();
+            if (current == null || current.getNumber() == null || current.getNumber().doubleValue() != r) {
+                rate.setValue(new Value(r));
+            }
+        }
+        setCounter(m, "Unknown Notifications", metrics.getUnknown());
+        setCounter(m, "Unsupported Notifications", metrics.getUnsupported());
+        setCounter(m, "Unsupported Values", metrics.getUnsupportedValues());
+
+        Node latency = m.getChild("Handler Latency");
+        updateHistogramNode(latency.getChild("Value Added"), metrics.getValueAdded());
+        updateHistogramNode(latency.getChild("Value Changed"), metrics.getValueChanged());
+        updateHistogramNode(latency.getChild("Node Added"), metrics.getNodeAdded());
+        updateHistogramNode(latency.getChild("Queue Wait"), metrics.getQueueWait());
+
+        Node rtt = m.getChild("Write Round Trip");
+        for (int i = 1; i < 256; i++) {
+            LatencyHistogram h = metrics.getRoundTrip((short) i);
+            if (h == null) {
+                continue;
+            }
+            String nid = String.valueOf(i);
+            Node child = rtt.getChild(nid);
+            if (child == null) {
+                child = histogramNode(rtt, nid);
+            }
+            updateHistogramNode(child, h);
+        }
+    }
+
+    private void updateHistogramNode(Node n, LatencyHistogram h) {
+        setCounter(n, "Count", h.getCount());
+        setCounter(n, "Mean", h.getMean());
+        setCounter(n, "P50", h.getPercentile(50));
+        setCounter(n, "P99", h.getPercentile(99));
+        setCounter(n, "Max", h.getMax());
+    }
+
+    //helper method that only updates a counter node when its value changed
+    private void setCounter(Node parent, String name, long count) {
+        Node child = parent.getChild(name);
+        if (child == null) {
+            return;
+        }
+        Value current = child.getValue();
+        if (current == null || current.getNumber() == null || current.getNumber().longValue() != count) {
+            child.setValue(new Value(count));
+        }
+    }
+
+    //action method to turn coalescing of value updates on or off
+    private Action coalescingAction() {
+        long window = dispatcher.getCoalesceWindow();
+        Action act = new Action(Permission.WRITE, new CoalescingHandler());
+        act.addParameter(new Parameter("Enabled", ValueType.BOOL, new Value(window > 0)));
+        act.addParameter(new Parameter("Window", ValueType.NUMBER,
+                new Value(window > 0 ? window : 200))
+                .setDescription("Milliseconds, " + NotificationDispatcher.MIN_COALESCE_WINDOW
+                        + " to " + NotificationDispatcher.MAX_COALESCE_WINDOW));
+        return act;
+    }
+
+    //handler for turning coalescing of value updates on or off
+    private class CoalescingHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            boolean enabled = event.getParameter("Enabled", ValueType.BOOL).getBool();
+            long window = event.getParameter("Window", ValueType.NUMBER).getNumber().longValue();
+            dispatcher.setCoalesceWindow(enabled ? window : 0);
+            window = dispatcher.getCoalesceWindow();
+            node.setAttribute("coalesce window", new Value(window));
+
+            Node queue = node.getChild("Notification Queue");
+            queue.getChild("Coalescing Window").setValue(new Value(window));
+            queue.getChild("Set Coalescing").setAction(coalescingAction());
+            LOGGER.info("Coalescing window: {} ms", window);
+        }
+    }
+
+    //action method to set the rate limits of the write queue
+    private Action writeLimitsAction() {
+        Action act = new Action(Permission.WRITE, new WriteLimitsHandler());
+        act.addParameter(new Parameter("Commands Per Second", ValueType.NUMBER,
+                new Value(commandQueue.getRate()))
+                .setDescription("Commands sent by the controller per second, 0 for no limit"));
+        act.addParameter(new Parameter("Node Interval", ValueType.NUMBER,
+                new Value(commandQueue.getNodeInterval()))
+                .setDescription("Minimum milliseconds between commands to the same device"));
+        return act;
+    }
+
+    //handler for setting the rate limits of the write queue
+    private class WriteLimitsHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            double rate = event.getParameter("Commands Per Second", ValueType.NUMBER).getNumber().doubleValue();
+            long interval = event.getParameter("Node Interval", ValueType.NUMBER).getNumber().longValue();
+            commandQueue.setLimits(rate, interval);
+            node.setAttribute("write rate", new Value(commandQueue.getRate()));
+            node.setAttribute("node write interval", new Value(commandQueue.getNodeInterval()));
+
+            Node writes = node.getChild("Write Queue");
+            writes.getChild("Commands Per Second").setValue(new Value(commandQueue.getRate()));
+            writes.getChild("Node Interval").setValue(new Value(commandQueue.getNodeInterval()));
+            writes.getChild("Set Write Limits").setAction(writeLimitsAction());
+            LOGGER.info("Write limits: {} commands/s, {} ms per node",
+                    commandQueue.getRate(), commandQueue.getNodeInterval());
+        }
+    }
+
+    //handler for turning the refresh of newly subscribed data points on or off
+    private class RefreshOnSubscribeHandler implements Handler<ValuePair> {
+        @Override
+        public void handle(ValuePair event) {
+            if (!event.isFromExternalSource()) return;
+            Boolean enabled = event.getCurrent().getBool();
+            refreshOnSubscribe = enabled != null && enabled;
+            node.setAttribute("refresh on subscribe", new Value(refreshOnSubscribe));
+            LOGGER.info("Refresh on subscribe: {}", refreshOnSubscribe);
+        }
+    }
+
+    //action method to change how many values of a simulated network change per second
+    private Action changeRateAction() {
+        Action act = new Action(Permission.WRITE, new ChangeRateHandler());
+        act.addParameter(new Parameter("Changes Per Second", ValueType.NUMBER,
+                new Value(((SimulatedManager) manager).getChangeRate())));
+        return act;
+    }
+
+    //handler for changing the change rate of a simulated network
+    private class ChangeRateHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            double rate = event.getParameter("Changes Per Second", ValueType.NUMBER).getNumber().doubleValue();
+            SimulatedManager sim = (SimulatedManager) manager;
+            sim.setChangeRate(rate);
+            node.setAttribute("sim change rate", new Value(sim.getChangeRate()));
+            node.getChild("Set Change Rate").setAction(changeRateAction());
+            LOGGER.info("Simulated change rate: {}/s", sim.getChangeRate());
+        }
+    }
+
+    //handler for failing or reviving a device of a simulated network
+    private class NodeFailedHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            short id = event.getParameter("Node ID", ValueType.NUMBER).getNumber().shortValue();
+            boolean failed = event.getParameter("Failed", ValueType.BOOL).getBool();
+            ((SimulatedManager) manager).setNodeFailed(id, failed);
+        }
+    }
+
+    //handler for changing the overflow policy of the notification queue
+    private class OverflowPolicyHandler implements Handler<ValuePair> {
+        @Override
+        public void handle(ValuePair event) {
+            if (!event.isFromExternalSource()) return;
+            String name = event.getCurrent().getString();
+            try {
+                NotificationDispatcher.OverflowPolicy policy = NotificationDispatcher.OverflowPolicy.valueOf(name);
+                dispatcher.setPolicy(policy);
+                node.setAttribute("overflow policy", new Value(policy.name()));
+                LOGGER.info("Notification queue overflow policy: {}", policy);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Unknown overflow policy: {}", name);
+            }
+        }
+    }
+
+    //handle a queued notification (runs on the dispatcher thread)
+    private void dispatch(ZWaveEvent notification) {
+        long start = System.nanoTime();
+        metrics.received(notification.getType(), start - notification.getReceived());
+        switch (notification.getType()) {
+            case DRIVER_READY:
+                driverReady(notification);
+                break;
+            case DRIVER_FAILED:
+                driverFailed();
+                break;
+            case DRIVER_RESET:
+                driverReset();
+                break;
+            case DRIVER_REMOVED:
+                driverRemoved();
+                break;
+            case AWAKE_NODES_QUERIED:
+                awakeNodesQueried();
+                break;
+            case ALL_NODES_QUERIED:
+                allNodesQueried();
+                break;
+            case ALL_NODES_QUERIED_SOME_DEAD:
+                allNodesQueriedSomeDead();
+                break;
+            case POLLING_ENABLED:
+                pollingEnabled(notification);
+                break;
+            case POLLING_DISABLED:
+                pollingDisabled(notification);
+                break;
+            case NODE_NEW:
+                nodeNew(notification);
+                break;
+            case NODE_ADDED:
+                nodeAdded(notification);
+                break;
+            case NODE_REMOVED:
+                nodeRemoved(notification);
+                break;
+            case ESSENTIAL_NODE_QUERIES_COMPLETE:
+                essentialNodeQueriesComplete(notification);
+                break;
+            case NODE_QUERIES_COMPLETE:
+                nodeQueriesComplete(notification);
+                break;
+            case NODE_EVENT:
+                nodeEvent(notification);
+                break;
+            case NODE_NAMING:
+                nodeNaming(notification);
+                break;
+            case NODE_PROTOCOL_INFO:
+                nodeProtocolInfo(notification);
+                break;
+            case VALUE_ADDED:
+                valueAdded(notification);
+                break;
+            case VALUE_REMOVED:
+                valueRemoved(notification);
+                break;
+            case VALUE_CHANGED:
+                valueChanged(notification);
+                break;
+            case VALUE_REFRESHED:
+                valueRefreshed(notification);
+                break;
+            case GROUP:
+                group(notification);
+                break;
+            case SCENE_EVENT:
+                sceneEvent(notification);
+                break;
+            case CREATE_BUTTON:
+                createButton(notification);
+                break;
+            case DELETE_BUTTON:
+                deleteButton(notification);
+                break;
+            case BUTTON_ON:
+                buttonOn(notification);
+                break;
+            case BUTTON_OFF:
+                buttonOff(notification);
+                break;
+            case NOTIFICATION:
+                note(notification);
+                break;
+            case CONTROLLER_COMMAND:
+                controllerCommand(notification);
+                break;
+            case NOT_SUPPORTED:
+                metrics.unsupported();
+                LOGGER.error("NON_SUPPORTED notification type");
+                break;
+            default:
+                metrics.unknown();
+                LOGGER.error("NotificationWatcher default - unknown notification type: "
+                        + notification.getType().name());
+                break;
+        }
+        metrics.handled(notification.getType(), System.nanoTime() - start);
     }
 
     //build the new node based on previous session information
-	private void nodeAdded(Notification notification) {
+	private void nodeAdded(ZWaveEvent notification) {
         Short nodeId = notification.getNodeId();
-        if (devices.containsKey(nodeId.toString())) { //device is already recognized and running
+        ZWaveDevice known = devices.get(nodeId);
+        if (known != null) { //device is already recognized and running
+            known.startInterview();
             return;
         }
         String nid = nodeId.toString();
-        Node c = node.getChild("Status");
-        c.setValueType(ValueType.STRING);
-        c.setValue(new Value("Adding node " + nid));
         NodeBuilder b = node.createChild(nid);
         String name = manager.getNodeProductName(notification.getHomeId(), notification.getNodeId());
         b.setDisplayName(name + "-" + nid);
@@ -234,9 +959,10 @@ public class ZWaveConn {
             b.setHidden(true);
         }
         Node child = b.build();
-        ZWaveDevice zwd = new ZWaveDevice(node, child, this);
-        devices.put(nid, zwd);
-
+        ZWaveDevice zwd = new ZWaveDevice(node, child, this, nodeId);
+        devices.put(nodeId, zwd);
+        zwd.initHealth();
+        interview.changed();
 
         Action childAct = zwd.setNameAction();
         child.createChild("Rename").setAction(childAct).build().setSerializable(false);
@@ -245,63 +971,87 @@ public class ZWaveConn {
 	}
 
     //add the new data point to the node
-	private void valueAdded(Notification notification) {
-        Short nodeId = notification.getNodeId();
-        Node child = node.getChild("Status");
-        child.setValueType(ValueType.STRING);
-        child.setValue(new Value("Adding value to node " + nodeId.toString()));
-        child.setWritable(Writable.NEVER);
-        ZWaveDevice zwp = devices.get(nodeId.toString());
-        zwp.addValue(notification);
+	private void valueAdded(ZWaveEvent notification) {
+        ZWaveDevice zwp = devices.get(notification.getNodeId());
+        if (zwp != null) {
+            zwp.addValue(notification);
+            interview.valueAdded();
+        }
 	}
 
     //update the data point
-	private void valueChanged(Notification notification) {
-		Short nodeId = notification.getNodeId();
-		ZWaveDevice zwp = devices.get(nodeId.toString());
-		zwp.changeValue(notification);
+	private void valueChanged(ZWaveEvent notification) {
+		ZWaveDevice zwp = devices.get(notification.getNodeId());
+		if (zwp != null) {
+			zwp.changeValue(notification);
+		}
 	}
 
     //remove the data point
-	private void valueRemoved(Notification notification) {
-		Short nodeId = notification.getNodeId();
-        Node child = node.getChild("Status");
-        child.setValueType(ValueType.STRING);
-        child.setValue(new Value("Removing value from node " + nodeId.toString()));
-        child.setWritable(Writable.NEVER);
-		ZWaveDevice zwp = devices.get(nodeId.toString());
-		zwp.removeValue(notification);
+	private void valueRemoved(ZWaveEvent notification) {
+		ZWaveDevice zwp = devices.get(notification.getNodeId());
+		if (zwp != null) {
+			zwp.removeValue(notification);
+		}
 	}
 
 	//currently, this method does the same thing as valueChanged
-	private void valueRefreshed(Notification notification) {
+	private void valueRefreshed(ZWaveEvent notification) {
         LOGGER.info("Value Refreshed - " + notification.getNodeId());
 		valueChanged(notification);
 	}
 
     //all the initialization queries on a node have been completed
-	private void nodeQueriesComplete(Notification notification) {
-        Node child = node.getChild("Status");
-        child.setValueType(ValueType.STRING);
-        child.setValue(new Value("Finalizing Node Queries..."));
-        child.setWritable(Writable.NEVER);
+	private void nodeQueriesComplete(ZWaveEvent notification) {
+        checkHealth(notification.getNodeId());
+        ZWaveDevice zwd = devices.get(notification.getNodeId());
+        if (zwd != null) {
+            zwd.interviewed(ZWaveDevice.Interview.COMPLETE);
+            zwd.updateGroups();
+        }
         LOGGER.info("Node Queries Complete - " + notification.getNodeId());
 	}
 
     //driver for a PC Z-Wave controller has been added and is ready to use
-	private void driverReady(Notification notification) {
+	private void driverReady(ZWaveEvent notification) {
         LOGGER.info("Driver Ready");
-        Node child = node.getChild("Status");
-        child.setValueType(ValueType.STRING);
-        child.setValue(new Value("Driver Ready"));
-        child.setWritable(Writable.NEVER);
+        setStatus("Driver Ready");
+        interview.start();
 		homeId = notification.getHomeId();
         controllerNode = manager.getControllerNodeId(homeId);
+        driverLoaded = true;
+        if (restoredHomeId != 0) {
+            if (restoredHomeId != homeId) {
+                LOGGER.warn("Snapshot is from controller {}, discarding it", Long.toHexString(restoredHomeId));
+                discardSnapshot();
+            } else {
+                Node controller = node.getChild(controllerNode.toString());
+                if (controller != null) {
+                    controller.setHidden(true);
+                }
+            }
+        }
+        synchronized (restartLock) {
+            if (restartState == RestartState.ADDING) {
+                cancelRestartTimeout();
+                restartState = RestartState.IDLE;
+                manager.requestNodeState(homeId, controllerNode);
+                LOGGER.info("Controller restarted");
+            }
+        }
 	}
 
     //driver failed to load
 	private void driverFailed() {
 		LOGGER.info("Driver failed");
+        driverLoaded = false;
+        synchronized (restartLock) {
+            if (restartState == RestartState.ADDING) {
+                cancelRestartTimeout();
+                restartState = RestartState.IDLE;
+                setStatus("Restart failed - driver failed on " + controllerPort);
+            }
+        }
 	}
 
     //all nodes and values for this driver have been removed
@@ -312,6 +1062,12 @@ public class ZWaveConn {
     //driver has been removed from the manager
     private void driverRemoved() {
         LOGGER.info("Driver removed");
+        driverLoaded = false;
+        synchronized (restartLock) {
+            if (restartState == RestartState.REMOVING) {
+                addDriverStep();
+            }
+        }
     }
 
     //all awake nodes have been queried, so client application can expect complete data for these nodes
@@ -320,6 +1076,8 @@ public class ZWaveConn {
 
         removeExtraNodes(); //clean out unused nodes
         addActions();
+        scenes.sync();
+        interview.reached(InterviewTracker.Phase.AWAKE_NODES_QUERIED);
 
         Node child = node.getChild("Status");
         child.setValueType(ValueType.STRING);
@@ -333,8 +1091,13 @@ public class ZWaveConn {
         manager.writeConfig(homeId);
 
         removeExtraNodes(); //clean out unused nodes
+        removeStaleNodes();
+        saveSnapshot();
 
         addActions();
+        scenes.sync();
+        mesh.updateTopology();
+        interview.reached(InterviewTracker.Phase.COMPLETE);
 
         Node child = node.getChild("Status");
         child.setValueType(ValueType.STRING);
@@ -345,9 +1108,17 @@ public class ZWaveConn {
     //all nodes have been queried but some dead nodes found
     private void allNodesQueriedSomeDead() {
 		manager.writeConfig(homeId);
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            checkHealth(zwd.getNodeId());
+        }
 
         removeExtraNodes(); //clean out unused nodes
+        removeStaleNodes();
+        saveSnapshot();
         addActions();
+        scenes.sync();
+        mesh.updateTopology();
+        interview.reached(InterviewTracker.Phase.COMPLETE);
 
         Node child = node.getChild("Status");
         child.setValueType(ValueType.STRING);
@@ -356,18 +1127,31 @@ public class ZWaveConn {
     }
 
     //basic node information has been received
-	private void nodeProtocolInfo(Notification notification) {
+	private void nodeProtocolInfo(ZWaveEvent notification) {
         LOGGER.info("Node Protocol Info - " + notification.getNodeId());
+        ZWaveDevice zwd = devices.get(notification.getNodeId());
+        if (zwd != null) {
+            long home = notification.getHomeId();
+            short nid = notification.getNodeId();
+            zwd.setSleeper(!manager.isNodeListeningDevice(home, nid)
+                    && !manager.isNodeFrequentListeningDevice(home, nid));
+        }
 	}
 
     //the queries on a node that are essential to its operation have been completed.
     //The node can now handle incoming messages
-	private void essentialNodeQueriesComplete(Notification notification) {
+	private void essentialNodeQueriesComplete(ZWaveEvent notification) {
+        ZWaveDevice zwd = devices.get(notification.getNodeId());
+        if (zwd != null) {
+            zwd.setQueryStage(manager.getNodeQueryStage(homeId, notification.getNodeId()));
+            //the device can handle messages now, no need to wait for the rest of the interview
+            zwd.interviewed(ZWaveDevice.Interview.ESSENTIAL);
+        }
         LOGGER.info("Essential Node Queries Complete - " + notification.getNodeId());
 	}
 
     //one of the node names has changed (name, manufacturer, product)
-	private void nodeNaming(Notification notification) {
+	private void nodeNaming(ZWaveEvent notification) {
         LOGGER.info("Node Naming - " + notification.getNodeId());
         Short nid = notification.getNodeId();
         String name = manager.getNodeProductName(notification.getHomeId(), notification.getNodeId());
@@ -376,70 +1160,111 @@ public class ZWaveConn {
 	}
 
     //new node has been found
-	private void nodeNew(Notification notification) {
+	private void nodeNew(ZWaveEvent notification) {
         LOGGER.info("Node New - " + notification.getNodeId());
         // String name = manager.getNodeProductName(notification.getHomeId(), notification.getNodeId());
 	}
 
     //node has been removed from OpenZWave's list
-	private void nodeRemoved(Notification notification) {
-        Short nodeId = notification.getNodeId();
-        String nid = nodeId.toString();
-        devices.remove(nid);
+	private void nodeRemoved(ZWaveEvent notification) {
+        ZWaveDevice zwd = devices.remove(notification.getNodeId());
+        if (zwd != null) {
+            zwd.clearPoints();
+            interview.changed();
+        }
         LOGGER.info("Node Removed - " + notification.getNodeId());
 	}
 
     //node has triggered an event
-	private void nodeEvent(Notification notification) {
+	private void nodeEvent(ZWaveEvent notification) {
         LOGGER.info("Node Event - " + notification.getNodeId());
 	}
 
     //polling of a node has been successfully turned on
-	private void pollingEnabled(Notification notification) {
+	private void pollingEnabled(ZWaveEvent notification) {
 		LOGGER.info("Polling enabled - " + notification.getNodeId());
+        ValuePoint point = valuePoints.get(ValuePoint.key(notification.getValueId()));
+        if (point != null) {
+            getPollScheduler().track(point, this, manager.getPollIntensity(point.getValueId()));
+        }
 	}
 
     //polling of a node has been successfully turned off
-	private void pollingDisabled(Notification notification) {
+	private void pollingDisabled(ZWaveEvent notification) {
 		LOGGER.info("Polling disabled - " + notification.getNodeId());
+        ValuePoint point = valuePoints.get(ValuePoint.key(notification.getValueId()));
+        if (point != null) {
+            getPollScheduler().untrack(point);
+        }
 	}
 
     //associations for the node have changed
-	private void group(Notification notification) {
-        LOGGER.info("Group - " + notification.getNodeId());
+	private void group(ZWaveEvent notification) {
+        ZWaveDevice zwd = devices.get(notification.getNodeId());
+        if (zwd != null) {
+            zwd.updateGroup(notification.getGroupIdx());
+        }
+        LOGGER.info("Group - " + notification.getNodeId() + ", group " + notification.getGroupIdx());
 	}
 
     //scene Activation Set received
-	private void sceneEvent(Notification notification) {
-        LOGGER.info("Scene Event - " + notification.getNodeId());
+	private void sceneEvent(ZWaveEvent notification) {
+        LOGGER.info("Scene Event - " + notification.getNodeId() + ", scene " + notification.getSceneId());
 	}
 
     //Handheld controller button event created
-	private void createButton(Notification notification) {
+	private void createButton(ZWaveEvent notification) {
         LOGGER.info("Create Button - " + notification.getNodeId());
 	}
 
     //Handheld controller button event created
-	private void deleteButton(Notification notification) {
+	private void deleteButton(ZWaveEvent notification) {
         LOGGER.info("Delete Button - " + notification.getNodeId());
 	}
 
     //Handheld controller button on pressed event
-	private void buttonOn(Notification notification) {
+	private void buttonOn(ZWaveEvent notification) {
         LOGGER.info("Button On - " + notification.getNodeId());
 	}
 
     //Handheld controller button off pressed event
-	private void buttonOff(Notification notification) {
+	private void buttonOff(ZWaveEvent notification) {
         LOGGER.info("Button Off - " + notification.getNodeId());
 	}
 
     //error has occurred that needs to be reported
-	private void note(Notification notification) {
+	private void note(ZWaveEvent notification) {
         LOGGER.info("Notification - " + notification.getNodeId() + ", code: " + notification.getNotification());
+        ZWaveDevice zwd = devices.get(notification.getNodeId());
+        if (zwd == null) {
+            return;
+        }
+        switch (notification.getNotification()) {
+            case CODE_TIMEOUT:
+                zwd.timedOut();
+                break;
+            case CODE_NOOP:
+                zwd.responded(-1);
+                mesh.pong(notification.getNodeId(), notification.getReceived());
+                break;
+            case CODE_AWAKE:
+                zwd.setAwake(true);
+                break;
+            case CODE_SLEEP:
+                zwd.setAwake(false);
+                break;
+            case CODE_DEAD:
+                zwd.setDead(true);
+                break;
+            case CODE_ALIVE:
+                zwd.setDead(false);
+                break;
+            default:
+                break;
+        }
 	}
 
-    private void controllerCommand(Notification notification) {
+    private void controllerCommand(ZWaveEvent notification) {
         LOGGER.info("Controller Command - " + notification.getNodeId());
     }
 
@@ -467,6 +1292,81 @@ public class ZWaveConn {
         }
     }
 
+    //action method to write several data points in one request
+    private Action setValuesAction() {
+        Action act = new Action(Permission.WRITE, new SetValuesHandler());
+        act.addParameter(new Parameter("Values", ValueType.ARRAY)
+                .setDescription("List of {\"device\", \"value\", \"newValue\"} objects or [device, value, new value] rows;"
+                        + " a device is given by its name or node ID"));
+        act.addParameter(new Parameter("All Or Nothing", ValueType.BOOL, new Value(true))
+                .setDescription("Queue nothing if any entry is invalid"));
+        act.addParameter(new Parameter("Wait", ValueType.NUMBER, new Value(0))
+                .setDescription("Seconds to wait for the devices to confirm the writes, at most "
+                        + MAX_BATCH_WAIT));
+        act.addResult(new Parameter("Row", ValueType.NUMBER));
+        act.addResult(new Parameter("Device", ValueType.STRING));
+        act.addResult(new Parameter("Value", ValueType.STRING));
+        act.addResult(new Parameter("New Value", ValueType.STRING));
+        act.addResult(new Parameter("Status", ValueType.STRING));
+        act.addResult(new Parameter("Detail", ValueType.STRING));
+        act.addResult(new Parameter("Latency", ValueType.NUMBER));
+        act.setResultType(ResultType.TABLE);
+        return act;
+    }
+
+    //handler for writing a batch of data points, returns one row per entry
+    private class SetValuesHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            if (manager == null) {
+                return;
+            }
+            Value param = event.getParameter("Values");
+            JsonArray rows = param == null ? null : param.getArray();
+            if (rows == null && param != null && param.getString() != null) {
+                try {
+                    rows = new JsonArray(param.getString());
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Set Values - not a JSON list: {}", e.getMessage());
+                }
+            }
+            if (rows == null) {
+                LOGGER.warn("Missing parameter - Values is required");
+                return;
+            }
+            BatchWrite batch = BatchWrite.parse(rows);
+            int invalid = batch.validate(manager, devices);
+            boolean allOrNothing = event.getParameter("All Or Nothing", new Value(true)).getBool();
+            if (invalid == 0 || !allOrNothing) {
+                batch.submit(commandQueue);
+                long wait = event.getParameter("Wait", new Value(0)).getNumber().longValue();
+                if (wait > 0) {
+                    try {
+                        batch.await(TimeUnit.SECONDS.toMillis(Math.min(wait, MAX_BATCH_WAIT)));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            LOGGER.info("Set Values: {} entries, {} invalid, validated in {} us, queued in {} us",
+                    batch.getItems().size(), invalid,
+                    TimeUnit.NANOSECONDS.toMicros(batch.getValidateTime()),
+                    TimeUnit.NANOSECONDS.toMicros(batch.getSubmitTime()));
+
+            Table table = event.getTable();
+            for (BatchWrite.Item item : batch.getItems()) {
+                String status = item.getStatus() == null ? "NOT_QUEUED" : item.getStatus().name();
+                table.addRow(Row.make(new Value(item.getRow()),
+                        new Value(item.getDevice()),
+                        new Value(item.getName()),
+                        new Value(item.getValue() == null ? null : item.getValue().toString()),
+                        new Value(status),
+                        new Value(item.getDetail()),
+                        new Value(item.getLatency())));
+            }
+        }
+    }
+
     //add all the actions for the controller node
     private void addActions() {
         Action delAct = new Action(Permission.WRITE, new DeleteHandler());
@@ -490,6 +1390,8 @@ public class ZWaveConn {
 
         Action actRefresh = new Action(Permission.READ, new ControllerRefreshHandler());
         node.createChild("Refresh").setAction(actRefresh).setSerializable(false).build();
+
+        node.createChild("Set Values").setAction(setValuesAction()).setSerializable(false).build();
     }
 
     //remove the actions fro the controller during a refresh
@@ -499,6 +1401,7 @@ public class ZWaveConn {
         node.removeChild("All On");
         node.removeChild("All Off");
         node.removeChild("Refresh");
+        node.removeChild("Set Values");
     }
 
     //handler for editing the controller node
@@ -511,10 +1414,16 @@ public class ZWaveConn {
             }
             String cp = event.getParameter("Comm Port ID", ValueType.STRING).getString();
             if (!controllerPort.equals(cp)) {
-                controllerPort = cp;
-                node.setAttribute("comm port id", new Value(controllerPort));
-                stop();
-                restart();
+                PortInventory inventory = link.getPortInventory();
+                inventory.claim(cp);
+                try {
+                    String oldPort = controllerPort;
+                    controllerPort = cp;
+                    node.setAttribute("comm port id", new Value(controllerPort));
+                    restart(oldPort);
+                } finally {
+                    inventory.release(cp);
+                }
             }
 		}
 	}
@@ -522,17 +1431,76 @@ public class ZWaveConn {
     //handler for deleting the controller node
     private class DeleteHandler implements Handler<ActionResult> {
         public void handle(ActionResult event) {
+            if (manager == null) {
+                link.stop(node);
+                return;
+            }
+            synchronized (restartLock) {
+                //a pending restart step must not add the driver back for a deleted connection
+                stopped = true;
+                cancelRestartTimeout();
+                restartState = RestartState.IDLE;
+            }
             stop();
+            router.remove(ZWaveConn.this);
+            //the points below are only touched by the dispatcher thread, let it finish first
+            dispatcher.stop();
+            link.getPollScheduler().remove(ZWaveConn.this);
+            scenes.removeAll();
+            for (ZWaveDevice zwd : devices.snapshot()) {
+                //hands the memory of the value histories back to the budget
+                zwd.clearPoints();
+            }
+            if (manager instanceof SimulatedManager) {
+                ((SimulatedManager) manager).shutdown();
+            }
+            if (snapshotFuture != null) {
+                snapshotFuture.cancel(false);
+                snapshotFuture = null;
+            }
+            if (probeFuture != null) {
+                probeFuture.cancel(false);
+                probeFuture = null;
+            }
+            if (meshFuture != null) {
+                meshFuture.cancel(false);
+                meshFuture = null;
+            }
+            try {
+                Files.deleteIfExists(snapshotFile().toPath());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete device snapshot - {}", e.getMessage());
+            }
+            commandQueue.stop();
+            if (queueStatsFuture != null) {
+                queueStatsFuture.cancel(false);
+                queueStatsFuture = null;
+            }
             link.stop(node);
         }
     }
 
+    //drop what the snapshot restored but OpenZWave did not report again, e.g. a device excluded
+    //while the link was down; otherwise it stays stale and every snapshot writes it back
+    private void removeStaleNodes() {
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            int removed = zwd.removeStalePoints();
+            if (removed > 0 && zwd.getPoints().isEmpty()) {
+                LOGGER.info("Node {} was not reported again, removing it", zwd.getNodeId());
+                devices.remove(zwd.getNodeId(), zwd);
+                node.removeChild(zwd.getName());
+                interview.changed();
+            } else if (removed > 0) {
+                LOGGER.info("Removed {} stale values of node {}", removed, zwd.getNodeId());
+            }
+        }
+    }
+
     //remove unused nodes that were disconnected during runtime
     private void removeExtraNodes() {
-        for (ZWaveDevice zwd : devices.values()) {
-            String name = zwd.getName();
-            if (!node.hasChild(name)) {
-                devices.remove(name);
+        for (ZWaveDevice zwd : devices.snapshot()) {
+            if (!node.hasChild(zwd.getName())) {
+                devices.remove(zwd.getNodeId(), zwd);
             }
         }
     }
@@ -1,5 +1,6 @@
 package org.dsa.iot.zwave;
 
+import org.dsa.iot.dslink.link.Linkable;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.NodeBuilder;
 import org.dsa.iot.dslink.node.Permission;
@@ -7,6 +8,9 @@ import org.dsa.iot.dslink.node.Writable;
 import org.dsa.iot.dslink.node.actions.Action;
 import org.dsa.iot.dslink.node.actions.ActionResult;
 import org.dsa.iot.dslink.node.actions.Parameter;
+import org.dsa.iot.dslink.node.actions.ResultType;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValuePair;
 import org.dsa.iot.dslink.node.value.ValueType;
@@ -15,12 +19,12 @@ import org.dsa.iot.dslink.util.json.JsonArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.dsa.iot.dslink.util.handler.Handler;
-import org.zwave4j.Manager;
-import org.zwave4j.Notification;
-import org.zwave4j.ValueGenre;
 import org.zwave4j.ValueId;
 
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class ZWaveDevice {
@@ -32,13 +36,45 @@ public class ZWaveDevice {
     }
 
     private Node node, parent;
-    private long homeId;
+    private final short nodeId;
     private ZWaveConn conn;
-    private final Manager manager;
+    private final ZWaveManager manager;
+    private final Map<String, ValuePoint> points = new ConcurrentHashMap<>();
 
-    public ZWaveDevice(Node parent, Node child, ZWaveConn conn) {
+    //health of the device as seen by the controller
+    public enum Health {
+        OK, SLOW, UNRESPONSIVE, DEAD
+    }
+
+    private static final long SLOW_RESPONSE = TimeUnit.SECONDS.toNanos(2);
+    private static final int DEAD_TIMEOUTS = 3; //consecutive timeouts before a device counts as dead
+    private static final long MIN_PROBE_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_PROBE_DELAY = TimeUnit.MINUTES.toMillis(10);
+    private Health health = Health.OK;
+    private long responseTime; //smoothed write round trip in nanoseconds
+    private int timeouts;
+    private long probeDelay = MIN_PROBE_DELAY;
+    private long nextProbe;
+
+    //progress of the device's interview, ESSENTIAL devices can already be used
+    public enum Interview {
+        PENDING, ESSENTIAL, COMPLETE
+    }
+
+    private volatile Interview interview = Interview.PENDING;
+    private volatile String queryStage = "";
+    private volatile boolean sleeper; //battery device that only listens while awake
+    private volatile boolean awake;
+    private volatile long interviewStart = System.currentTimeMillis();
+    private volatile long essentialTime = -1; //milliseconds from the start of the interview
+    private volatile long completeTime = -1;
+    private static final short CC_WAKE_UP = 0x84;
+    private volatile long lastWakeUp; //currentTimeMillis of the last Awake notification, 0 if none
+    private int pendingCommands = -1; //last published count of queued commands
+
+    public ZWaveDevice(Node parent, Node child, ZWaveConn conn, short nodeId) {
         this.node = child;
-        this.homeId = conn.getHomeId();
+        this.nodeId = nodeId;
         this.parent = parent;
         this.conn = conn;
         manager = conn.getManager();
@@ -48,13 +84,457 @@ public class ZWaveDevice {
         return node.getName();
     }
 
+    public short getNodeId() {
+        return nodeId;
+    }
+
+    public String getDisplayName() {
+        return node.getDisplayName();
+    }
+
+    //add the Health and Query Stage values to the device node
+    protected void initHealth() {
+        Set<String> states = new LinkedHashSet<>();
+        for (Health h : Health.values()) {
+            states.add(h.name());
+        }
+        NodeBuilder b = node.createChild("Health");
+        b.setValueType(ValueType.makeEnum(states));
+        b.setValue(new Value(health.name()));
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+
+        b = node.createChild("Query Stage");
+        b.setValueType(ValueType.STRING);
+        b.setValue(new Value(queryStage));
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+
+        b = node.createChild("Ready");
+        b.setValueType(ValueType.BOOL);
+        b.setValue(new Value(interview != Interview.PENDING));
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+
+        b = node.createChild("Parked Commands");
+        b.setValueType(ValueType.NUMBER);
+        b.setValue(new Value(0));
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+    }
+
+    //publish the number of writes and refreshes parked in the write queue for this device
+    protected void setPendingCommands(int count) {
+        if (count == pendingCommands) {
+            return;
+        }
+        pendingCommands = count;
+        Node child = node.getChild("Parked Commands");
+        if (child != null) {
+            child.setValue(new Value(count));
+        }
+    }
+
+    public synchronized Health getHealth() {
+        return health;
+    }
+
+    //the device answered, rtt is the round trip of a confirmed write or -1
+    protected synchronized void responded(long rtt) {
+        timeouts = 0;
+        if (rtt >= 0) {
+            responseTime = responseTime == 0 ? rtt : (responseTime * 3 + rtt) / 4;
+        }
+        setHealth(responseTime > SLOW_RESPONSE ? Health.SLOW : Health.OK);
+    }
+
+    //a message to the device timed out
+    protected synchronized void timedOut() {
+        timeouts++;
+        if (health != Health.DEAD) {
+            setHealth(timeouts >= DEAD_TIMEOUTS ? Health.DEAD : Health.UNRESPONSIVE);
+        }
+    }
+
+    //OpenZWave reported the device dead (failed) or alive again
+    protected synchronized void setDead(boolean dead) {
+        if (dead) {
+            setHealth(Health.DEAD);
+        } else if (health == Health.DEAD) {
+            timeouts = 0;
+            setHealth(Health.OK);
+        }
+    }
+
+    //whether a dead device is due for another probe, backing off up to MAX_PROBE_DELAY
+    protected synchronized boolean probeDue(long now) {
+        if (health != Health.DEAD || now < nextProbe) {
+            return false;
+        }
+        nextProbe = now + probeDelay;
+        probeDelay = Math.min(MAX_PROBE_DELAY, probeDelay * 2);
+        return true;
+    }
+
+    //writes to a dead device are parked in the write queue until it is alive again
+    private void setHealth(Health h) {
+        if (h == health) {
+            return;
+        }
+        Health old = health;
+        health = h;
+        if (h == Health.DEAD) {
+            probeDelay = MIN_PROBE_DELAY;
+            nextProbe = System.currentTimeMillis() + probeDelay;
+        }
+        conn.getCommandQueue().setParked(nodeId, CommandQueue.PARK_DEAD, h == Health.DEAD);
+        Node child = node.getChild("Health");
+        if (child != null) {
+            child.setValue(new Value(h.name()));
+        }
+        interviewChanged();
+        LOGGER.info("Health of node {}: {} -> {}", nodeId, old, h);
+    }
+
+    protected void setQueryStage(String stage) {
+        if (stage == null || stage.equals(queryStage)) {
+            return;
+        }
+        queryStage = stage;
+        Node child = node.getChild("Query Stage");
+        if (child != null) {
+            child.setValue(new Value(stage));
+        }
+    }
+
+    public String getQueryStage() {
+        return queryStage;
+    }
+
+    //OpenZWave (re)started interviewing the device (NODE_ADDED)
+    protected void startInterview() {
+        interviewStart = System.currentTimeMillis();
+        essentialTime = -1;
+        completeTime = -1;
+        setInterview(Interview.PENDING);
+    }
+
+    //the essential queries (ESSENTIAL) or all queries (COMPLETE) of the interview are done
+    protected void interviewed(Interview stage) {
+        if (stage.ordinal() <= interview.ordinal()) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - interviewStart;
+        if (essentialTime < 0) {
+            essentialTime = elapsed;
+        }
+        if (stage == Interview.COMPLETE) {
+            completeTime = elapsed;
+        }
+        setInterview(stage);
+    }
+
+    //the device is usable (Ready) once its essential queries are done
+    private void setInterview(Interview stage) {
+        boolean wasReady = interview != Interview.PENDING;
+        interview = stage;
+        boolean ready = stage != Interview.PENDING;
+        if (ready != wasReady) {
+            Node child = node.getChild("Ready");
+            if (child != null) {
+                child.setValue(new Value(ready));
+            }
+        }
+        interviewChanged();
+    }
+
+    private void interviewChanged() {
+        InterviewTracker tracker = conn.getInterview();
+        if (tracker != null) {
+            tracker.changed();
+        }
+    }
+
+    public Interview getInterview() {
+        return interview;
+    }
+
+    //milliseconds from the start of the interview to the essential queries, -1 if not done
+    public long getEssentialTime() {
+        return essentialTime;
+    }
+
+    //milliseconds from the start of the interview to its completion, -1 if not done
+    public long getCompleteTime() {
+        return completeTime;
+    }
+
+    //the protocol info tells whether the device sleeps between wake-ups
+    //commands to a sleeping device are parked in the write queue until it wakes up
+    protected void setSleeper(boolean sleeper) {
+        this.sleeper = sleeper;
+        conn.getCommandQueue().setParked(nodeId, CommandQueue.PARK_ASLEEP, isAsleep());
+        if (sleeper) {
+            addWakeUpActions();
+        }
+        interviewChanged();
+    }
+
+    public boolean isSleeper() {
+        return sleeper;
+    }
+
+    //a sleeping device woke up (NOTIFICATION Awake) or went back to sleep (NOTIFICATION Sleep)
+    protected void setAwake(boolean awake) {
+        this.awake = awake;
+        if (awake) {
+            lastWakeUp = System.currentTimeMillis();
+        }
+        CommandQueue queue = conn.getCommandQueue();
+        if (sleeper && awake && queue.isParked(nodeId, CommandQueue.PARK_ASLEEP)) {
+            LOGGER.info("Node {} woke up, sending {} parked commands", nodeId, queue.getParked(nodeId));
+        }
+        queue.setParked(nodeId, CommandQueue.PARK_ASLEEP, isAsleep());
+        interviewChanged();
+    }
+
+    //wake-up interval value of the device (COMMAND_CLASS_WAKE_UP), null if not reported
+    private ValuePoint wakeUpPoint() {
+        for (ValuePoint point : points.values()) {
+            ValueId id = point.getValueId();
+            if (id.getCommandClassId() == CC_WAKE_UP && id.getIndex() == 0) {
+                return point;
+            }
+        }
+        return null;
+    }
+
+    //actions to read and change how often a sleeping device wakes up
+    private void addWakeUpActions() {
+        if (node.hasChild("Get Wake-up Interval")) {
+            return;
+        }
+        Action get = new Action(Permission.READ, new GetWakeUpHandler());
+        get.addResult(new Parameter("Interval", ValueType.NUMBER));
+        get.addResult(new Parameter("Pending Interval", ValueType.NUMBER));
+        get.addResult(new Parameter("Last Wake-up", ValueType.TIME));
+        get.addResult(new Parameter("Asleep", ValueType.BOOL));
+        get.addResult(new Parameter("Parked Commands", ValueType.NUMBER));
+        node.createChild("Get Wake-up Interval").setAction(get).setSerializable(false).build();
+
+        Action set = new Action(Permission.WRITE, new SetWakeUpHandler());
+        set.addParameter(new Parameter("Seconds", ValueType.NUMBER, new Value(3600))
+                .setDescription("Applied by the device on its next wake-up"));
+        node.createChild("Set Wake-up Interval").setAction(set).setSerializable(false).build();
+    }
+
+    //handler reporting the wake-up interval and the commands waiting for the next wake-up
+    private class GetWakeUpHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            ZWaveDevice zwd = current();
+            ValuePoint point = zwd.wakeUpPoint();
+            Value interval = point != null ? point.getValue() : null;
+            Value pending = point != null ? conn.getCommandQueue().getPendingValue(point) : null;
+            long wake = zwd.lastWakeUp;
+            Table table = event.getTable();
+            table.addRow(Row.make(interval != null ? interval : new Value(-1),
+                    pending != null ? pending : new Value(-1),
+                    new Value(wake == 0 ? "" : new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").format(new Date(wake))),
+                    new Value(zwd.isAsleep()), new Value(conn.getCommandQueue().getParked(nodeId))));
+        }
+    }
+
+    //handler queueing a new wake-up interval, it is sent when the device wakes up
+    private class SetWakeUpHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            int seconds = event.getParameter("Seconds", ValueType.NUMBER).getNumber().intValue();
+            ValuePoint point = current().wakeUpPoint();
+            if (point == null) {
+                LOGGER.warn("Node {} has not reported a wake-up interval", nodeId);
+                return;
+            }
+            Value val = new Value(seconds);
+            String error = ValueWriter.forType(point.getType()).check(manager, point.getValueId(), val);
+            if (error != null) {
+                LOGGER.warn("Wake-up interval of node {} not set - {}", nodeId, error);
+                return;
+            }
+            if (!conn.getCommandQueue().submit(point, val)) {
+                LOGGER.warn("Write queue full, wake-up interval dropped - " + nodeId);
+                return;
+            }
+            LOGGER.info("Wake-up interval of node {} set to {} s", nodeId, seconds);
+        }
+    }
+
+    //whether the device is a sleeping device that is currently asleep
+    public boolean isAsleep() {
+        return sleeper && !awake;
+    }
+
+    //read all association groups of the device, called once its interview is complete
+    protected void updateGroups() {
+        short count = manager.getNumGroups(conn.getHomeId(), nodeId);
+        for (short g = 1; g <= count; g++) {
+            updateGroup(g);
+        }
+    }
+
+    //publish the members of an association group (node queries complete, GROUP notification)
+    protected void updateGroup(short groupIdx) {
+        long homeId = conn.getHomeId();
+        if (groupIdx < 1 || groupIdx > manager.getNumGroups(homeId, nodeId)) {
+            return;
+        }
+        Node groups = associationsNode();
+        AtomicReference<short[]> ref = new AtomicReference<>();
+        manager.getAssociations(homeId, nodeId, groupIdx, ref);
+        JsonArray members = new JsonArray();
+        if (ref.get() != null) {
+            for (short member : ref.get()) {
+                members.add((int) member);
+            }
+        }
+        String name = "Group " + groupIdx;
+        String label = manager.getGroupLabel(homeId, nodeId, groupIdx);
+        Node child = groups.getChild(name);
+        if (child == null) {
+            NodeBuilder b = groups.createChild(name);
+            b.setValueType(ValueType.ARRAY);
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            child = b.build();
+        }
+        if (label != null && !label.isEmpty()) {
+            child.setDisplayName(groupIdx + " - " + label);
+        }
+        child.setAttribute("label", new Value(label));
+        child.setAttribute("max associations", new Value(manager.getMaxAssociations(homeId, nodeId, groupIdx)));
+        child.setValue(new Value(members));
+    }
+
+    //node holding the association groups and their actions
+    private Node associationsNode() {
+        Node groups = node.getChild("Associations");
+        if (groups != null) {
+            return groups;
+        }
+        NodeBuilder b = node.createChild("Associations");
+        b.setSerializable(false);
+        groups = b.build();
+
+        Action add = new Action(Permission.WRITE, new AssociationHandler(true));
+        add.addParameter(new Parameter("Group", ValueType.NUMBER, new Value(1)));
+        add.addParameter(new Parameter("Target Node ID", ValueType.NUMBER)
+                .setDescription("Device that receives the commands of this group"));
+        groups.createChild("Add Association").setAction(add).setSerializable(false).build();
+
+        Action remove = new Action(Permission.WRITE, new AssociationHandler(false));
+        remove.addParameter(new Parameter("Group", ValueType.NUMBER, new Value(1)));
+        remove.addParameter(new Parameter("Target Node ID", ValueType.NUMBER));
+        groups.createChild("Remove Association").setAction(remove).setSerializable(false).build();
+
+        Action list = new Action(Permission.READ, new ListAssociationsHandler());
+        list.addResult(new Parameter("Group", ValueType.NUMBER));
+        list.addResult(new Parameter("Label", ValueType.STRING));
+        list.addResult(new Parameter("Members", ValueType.STRING));
+        list.addResult(new Parameter("Max Associations", ValueType.NUMBER));
+        list.setResultType(ResultType.TABLE);
+        groups.createChild("List Associations").setAction(list).setSerializable(false).build();
+        return groups;
+    }
+
+    //handler for adding or removing a member of an association group
+    //OpenZWave sends the change to the device, the tree is updated by the GROUP notification
+    private class AssociationHandler implements Handler<ActionResult> {
+        private final boolean add;
+
+        AssociationHandler(boolean add) {
+            this.add = add;
+        }
+
+        @Override
+        public void handle(ActionResult event) {
+            short group = event.getParameter("Group", ValueType.NUMBER).getNumber().shortValue();
+            Value target = event.getParameter("Target Node ID", ValueType.NUMBER);
+            long homeId = conn.getHomeId();
+            if (group < 1 || group > manager.getNumGroups(homeId, nodeId)) {
+                LOGGER.warn("Node {} has no association group {}", nodeId, group);
+                return;
+            }
+            if (target == null || target.getNumber() == null) {
+                LOGGER.warn("Missing parameter - Target Node ID is required");
+                return;
+            }
+            short targetId = target.getNumber().shortValue();
+            if (!add) {
+                manager.removeAssociation(homeId, nodeId, group, targetId);
+                LOGGER.info("Removing node {} from group {} of node {}", targetId, group, nodeId);
+                return;
+            }
+            if (targetId == nodeId || (!conn.getDevices().contains(targetId)
+                    && targetId != manager.getControllerNodeId(homeId))) {
+                LOGGER.warn("Unknown association target: {}", targetId);
+                return;
+            }
+            AtomicReference<short[]> ref = new AtomicReference<>();
+            long members = manager.getAssociations(homeId, nodeId, group, ref);
+            if (members >= manager.getMaxAssociations(homeId, nodeId, group)) {
+                LOGGER.warn("Association group {} of node {} is full", group, nodeId);
+                return;
+            }
+            manager.addAssociation(homeId, nodeId, group, targetId);
+            LOGGER.info("Adding node {} to group {} of node {}", targetId, group, nodeId);
+        }
+    }
+
+    //handler for listing the association groups with their members
+    private class ListAssociationsHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            long homeId = conn.getHomeId();
+            Table table = event.getTable();
+            short count = manager.getNumGroups(homeId, nodeId);
+            for (short g = 1; g <= count; g++) {
+                AtomicReference<short[]> ref = new AtomicReference<>();
+                manager.getAssociations(homeId, nodeId, g, ref);
+                StringBuilder members = new StringBuilder();
+                if (ref.get() != null) {
+                    for (short member : ref.get()) {
+                        if (members.length() > 0) {
+                            members.append(", ");
+                        }
+                        members.append(member);
+                    }
+                }
+                table.addRow(Row.make(new Value(g), new Value(manager.getGroupLabel(homeId, nodeId, g)),
+                        new Value(members.toString()), new Value(manager.getMaxAssociations(homeId, nodeId, g))));
+            }
+        }
+    }
+
     //add a new data point and value to the node
-    protected void addValue(Notification notification) {
+    protected void addValue(ZWaveEvent notification) {
         short validClass = notification.getValueId().getCommandClassId();
         // ignore COMMAND_CLASS_BASIC (0x20) as it currently not used for USER access
         // ignored because the value is removed by ZWave before the node stored as a child
         // which throws and error
         if (validClass > (short) 0x20) {
+            ValuePoint restored = conn.getValuePoints().get(ValuePoint.key(notification.getValueId()));
+            if (restored != null && restored.isStale()) {
+                //point was rebuilt from the snapshot, only refresh its reading
+                initPoint(restored);
+                trackPolling(restored);
+                setValue(restored);
+                LOGGER.info("Value reconciled - " + notification.getNodeId());
+                return;
+            }
             String name = StringUtils.encodeName(manager.getValueLabel(notification.getValueId())
                     .replace("(%)", "(Percent)"));
             // at least one device has been found to have a data point called "Unknown".
@@ -92,7 +572,8 @@ public class ZWaveDevice {
                 val = new Value(notification.getButtonId());
                 b.setAttribute("button", val);
 
-                val = new Value(manager.getValueUnits(notification.getValueId()));
+                String units = manager.getValueUnits(notification.getValueId());
+                val = new Value(units);
                 b.setAttribute("unit", val);
 
                 val = new Value(notification.getValueId().getType().name());
@@ -101,8 +582,14 @@ public class ZWaveDevice {
                 b.setValueType(ValueType.STRING);
                 b.setValue(null);
                 Node child = b.build();
+                ValuePoint point = new ValuePoint(notification.getValueId(), child, name, units);
+                cachePoint(point);
+                watch(point);
+                trackPolling(point);
+                restoreHistory(point);
 
-                setValue(notification.getValueId(), child);
+                initPoint(point);
+                setValue(point);
 
                 addActions(child);
             }
@@ -139,6 +626,190 @@ public class ZWaveDevice {
 
         Action act = setNameAction();
         node.createChild("Rename").setAction(act).build().setSerializable(false);
+
+        if (!node.hasChild("Set Polling")) {
+            final Action poll = new Action(Permission.WRITE, new PollingHandler());
+            poll.setParams(pollingParams());
+            NodeBuilder b = node.createChild("Set Polling");
+            b.setAction(poll);
+            b.setSerializable(false);
+            //data points keep arriving during the interview, refresh the choices when listed
+            b.getListener().setOnListHandler(new Handler<Node>() {
+                @Override
+                public void handle(Node event) {
+                    poll.setParams(pollingParams());
+                }
+            });
+            b.build();
+        }
+
+        if (!node.hasChild("Set History")) {
+            final Action history = new Action(Permission.WRITE, new HistoryHandler());
+            history.setParams(historyParams());
+            NodeBuilder b = node.createChild("Set History");
+            b.setAction(history);
+            b.setSerializable(false);
+            b.getListener().setOnListHandler(new Handler<Node>() {
+                @Override
+                public void handle(Node event) {
+                    history.setParams(historyParams());
+                }
+            });
+            b.build();
+        }
+    }
+
+    //the action nodes move to the new device when the device is renamed
+    private ZWaveDevice current() {
+        ZWaveDevice zwd = conn.getDevices().get(nodeId);
+        return zwd != null ? zwd : this;
+    }
+
+    //parameters of the polling action
+    private List<Parameter> pollingParams() {
+        List<Parameter> params = new ArrayList<>();
+        params.add(new Parameter("Value", ValueType.makeEnum(new TreeSet<>(current().points.keySet()))));
+        params.add(new Parameter("Intensity", ValueType.NUMBER, new Value(1))
+                .setDescription("Poll every Nth cycle while the value is in use, 0 turns polling off"));
+        return params;
+    }
+
+    //handler for setting the polling of a data point
+    private class PollingHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            String name = event.getParameter("Value", ValueType.STRING).getString();
+            int intensity = event.getParameter("Intensity", ValueType.NUMBER).getNumber().intValue();
+            ValuePoint point = current().points.get(name);
+            if (point == null) {
+                LOGGER.warn("Unknown data point: {}", name);
+                return;
+            }
+            conn.getPollScheduler().enable(point, conn, intensity);
+            if (intensity > 0) {
+                point.getNode().setAttribute("poll intensity", new Value(intensity));
+            } else {
+                point.getNode().removeAttribute("poll intensity");
+            }
+            LOGGER.info("Polling of {} set to {}", name, intensity);
+        }
+    }
+
+    //parameters of the history action
+    private List<Parameter> historyParams() {
+        List<Parameter> params = new ArrayList<>();
+        params.add(new Parameter("Value", ValueType.makeEnum(new TreeSet<>(current().points.keySet()))));
+        params.add(new Parameter("Samples", ValueType.NUMBER, new Value(600))
+                .setDescription("Readings kept in memory, 0 turns the history off"));
+        return params;
+    }
+
+    //handler for setting the history of a data point
+    private class HistoryHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            String name = event.getParameter("Value", ValueType.STRING).getString();
+            int samples = event.getParameter("Samples", ValueType.NUMBER).getNumber().intValue();
+            ValuePoint point = current().points.get(name);
+            if (point == null) {
+                LOGGER.warn("Unknown data point: {}", name);
+                return;
+            }
+            if (samples > 0 && enableHistory(point, samples)) {
+                point.getNode().setAttribute("history size", new Value(samples));
+                LOGGER.info("History of {} set to {} samples", name, samples);
+            } else {
+                enableHistory(point, 0);
+                point.getNode().removeAttribute("history size");
+                LOGGER.info("History of {} turned off", name);
+            }
+        }
+    }
+
+    //hand a data point OpenZWave polls (polling restored from its config) to the poll scheduler
+    private void trackPolling(ValuePoint point) {
+        if (manager.isPolled(point.getValueId())) {
+            Value base = point.getNode().getAttribute("poll intensity");
+            conn.getPollScheduler().track(point, conn, base != null && base.getNumber() != null
+                    ? base.getNumber().intValue() : manager.getPollIntensity(point.getValueId()));
+        }
+    }
+
+    //re-create the history of a data point that had one before a restart or re-interview
+    private void restoreHistory(ValuePoint point) {
+        Value size = point.getNode().getAttribute("history size");
+        if (size != null && size.getNumber() != null) {
+            enableHistory(point, size.getNumber().intValue());
+        }
+    }
+
+    //keep the last readings of a data point in memory, 0 drops the history
+    //only numbers and booleans are recorded; returns false if the value has no history
+    private boolean enableHistory(ValuePoint point, int samples) {
+        HistoryBudget budget = conn.getHistoryBudget();
+        budget.release(point);
+        Node child = point.getNode();
+        if (samples <= 0) {
+            child.removeChild("Get History");
+            return false;
+        }
+        switch (point.getType()) {
+            case BOOL:
+            case BYTE:
+            case DECIMAL:
+            case INT:
+            case SHORT:
+                break;
+            default:
+                LOGGER.warn("No history for {} values: {}", point.getType(), point.getName());
+                child.removeChild("Get History");
+                return false;
+        }
+        ValueHistory history = budget.allocate(samples);
+        if (history == null) {
+            LOGGER.warn("History budget of {} KB exhausted, no history for {}", budget.getBudget(), point.getName());
+            child.removeChild("Get History");
+            return false;
+        }
+        point.setHistory(history);
+        if (!child.hasChild("Get History")) {
+            Action act = new Action(Permission.READ, new GetHistoryHandler(point.getName()));
+            act.addParameter(new Parameter("Minutes", ValueType.NUMBER, new Value(0))
+                    .setDescription("Only readings from the last minutes, 0 returns all"));
+            act.addResult(new Parameter("Timestamp", ValueType.TIME));
+            act.addResult(new Parameter("Value", ValueType.NUMBER));
+            act.setResultType(ResultType.TABLE);
+            child.createChild("Get History").setAction(act).setSerializable(false).build();
+        }
+        return true;
+    }
+
+    //handler for reading the history of a data point, oldest reading first
+    private class GetHistoryHandler implements Handler<ActionResult> {
+        private final String name;
+
+        GetHistoryHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void handle(ActionResult event) {
+            ValuePoint point = current().points.get(name);
+            ValueHistory history = point == null ? null : point.getHistory();
+            if (history == null) {
+                return;
+            }
+            long minutes = event.getParameter("Minutes", new Value(0)).getNumber().longValue();
+            long since = minutes > 0 ? System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutes) : 0;
+            long[] times = new long[history.getCapacity()];
+            double[] values = new double[history.getCapacity()];
+            int count = history.copy(since, times, values);
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+            Table table = event.getTable();
+            for (int i = 0; i < count; i++) {
+                table.addRow(Row.make(new Value(format.format(new Date(times[i]))), new Value(values[i])));
+            }
+        }
     }
 
     //action method to set the handler for refreshing the values of the node
@@ -155,20 +826,30 @@ public class ZWaveDevice {
         @Override
         public void handle(ActionResult event) {
             final short val = kid.getAttribute("nodeId").getNumber().shortValue();
-            manager.refreshNodeInfo(homeId, val);
+            ZWaveDevice zwd = current();
+            if (zwd.isAsleep()) {
+                //the device would only answer once it is awake, ask for its values then
+                for (ValuePoint point : zwd.points.values()) {
+                    conn.getCommandQueue().submitRefresh(point);
+                }
+                LOGGER.info("Node {} is asleep, refresh parked until it wakes up", val);
+                return;
+            }
+            manager.refreshNodeInfo(conn.getHomeId(), val);
         }
     }
 
     //handler for setting the value a data point
     private class SetPointHandler implements Handler<ValuePair> {
-        private Node kid;
-        public SetPointHandler(Node kid) {
-            this.kid = kid;
+        private ValuePoint point;
+        public SetPointHandler(ValuePoint point) {
+            this.point = point;
         }
         @Override
         public void handle(ValuePair event) {
             if (!event.isFromExternalSource()) return;
-            sendValue(kid, event);
+            //the handler stays on the node when a rename replaces this device
+            current().sendValue(point, event);
         }
     }
 
@@ -200,7 +881,25 @@ public class ZWaveDevice {
     protected ZWaveDevice duplicate(String newName) {
         Node newNode = parent.createChild(newName).build();
         newNode.setAttribute("nodeId", node.getAttribute("nodeId"));
-        ZWaveDevice zwd = new ZWaveDevice(parent, newNode, conn);
+        ZWaveDevice zwd = new ZWaveDevice(parent, newNode, conn, nodeId);
+        zwd.points.putAll(points);
+        synchronized (this) {
+            zwd.health = health;
+            zwd.responseTime = responseTime;
+            zwd.timeouts = timeouts;
+            zwd.probeDelay = probeDelay;
+            zwd.nextProbe = nextProbe;
+            //a sleeping device stays parked under its new name
+            zwd.sleeper = sleeper;
+            zwd.awake = awake;
+            zwd.lastWakeUp = lastWakeUp;
+            //and keeps its interview progress, nothing promotes it again after ALL_NODES_QUERIED
+            zwd.interview = interview;
+            zwd.queryStage = queryStage;
+            zwd.interviewStart = interviewStart;
+            zwd.essentialTime = essentialTime;
+            zwd.completeTime = completeTime;
+        }
         moveAttrib(newNode);
         return zwd;
     }
@@ -215,333 +914,277 @@ public class ZWaveDevice {
 
     //removes the old node from the devices list and inserts the new one
     private void removeAndReplace(ZWaveDevice zwd) {
-        Map<String, ZWaveDevice> devices = conn.getDevices();
-        devices.remove(node.getAttribute("nodeId").getString());
-        devices.put(zwd.node.getAttribute("nodeId").getString(), zwd);
+        conn.getDevices().put(nodeId, zwd);
         parent.removeChild(node);
     }
 
     //changes the value of a data point
-    protected void changeValue(Notification notification) {
-        short validClass = notification.getValueId().getCommandClassId();
+    protected void changeValue(ZWaveEvent notification) {
+        ValueId valueId = notification.getValueId();
+        short validClass = valueId.getCommandClassId();
         // ignore COMMAND_CLASS_BASIC (0x20) as it currently not used for USER access
         // ignored because the value is removed by ZWave before it is stored as a child
         if (validClass > (short) 0x20) {
-            String name = StringUtils.encodeName(manager.getValueLabel(notification.getValueId())
-                    .replace("(%)", "(Percent)"));
-            Node child = node.getChild(name);
-            if (child == null) {
-                NodeBuilder b = node.createChild(name);
-                b.setValueType(ValueType.DYNAMIC);
-                child = b.build();
+            ValuePoint point = conn.getValuePoints().get(ValuePoint.key(valueId));
+            if (point == null) {
+                //value was not seen through VALUE_ADDED, resolve it by label once
+                String name = StringUtils.encodeName(manager.getValueLabel(valueId)
+                        .replace("(%)", "(Percent)"));
+                Node child = node.getChild(name);
+                if (child == null) {
+                    NodeBuilder b = node.createChild(name);
+                    b.setValueType(ValueType.DYNAMIC);
+                    child = b.build();
+                }
+                point = new ValuePoint(valueId, child, name, manager.getValueUnits(valueId));
+                cachePoint(point);
+                watch(point);
+                initPoint(point);
+            }
+            if (setValue(point)) {
+                conn.getPollScheduler().changed(point);
+            }
+            long rtt = point.confirmWrite(notification.getReceived());
+            if (rtt >= 0) {
+                conn.getMetrics().roundTrip(nodeId, rtt);
             }
-            setValue(notification.getValueId(), child);
+            responded(rtt);
         }
         //LOGGER.info("Value changed - " + notification.getNodeId());
     }
 
     //remove a data point from the node
-    protected void removeValue(Notification notification) {
+    protected void removeValue(ZWaveEvent notification) {
         short validClass = notification.getValueId().getCommandClassId();
         // ignore COMMAND_CLASS_BASIC (0x20) as it currently not used for USER access
         // ignored because the value is removed by ZWave before it is stored as a child
         if (validClass > (short) 0x20) {
-            String name = StringUtils.encodeName(manager.getValueLabel(notification.getValueId())
-                    .replace("(%)", "(Percent)"));
-            node.removeChild(name);
+            ValuePoint point = conn.getValuePoints().remove(ValuePoint.key(notification.getValueId()));
+            if (point != null) {
+                conn.getPollScheduler().untrack(point);
+                conn.getHistoryBudget().release(point);
+                points.remove(point.getName());
+                node.removeChild(point.getName());
+            } else if (notification.getValueLabel() != null) {
+                String name = StringUtils.encodeName(notification.getValueLabel()
+                        .replace("(%)", "(Percent)"));
+                node.removeChild(name);
+            }
         }
         LOGGER.info("Value removed - " + notification.getNodeId());
     }
 
-    //get the value from ZWave and set it to the data point
-    private void setValue(final ValueId valueId, Node child) {
-        Value val;
-        JsonArray valJson;
+    //drop the data points restored from the snapshot that OpenZWave did not report again
+    //(called once all nodes are queried), returns the number of points removed
+    protected int removeStalePoints() {
+        int removed = 0;
+        for (ValuePoint point : new ArrayList<>(points.values())) {
+            if (!point.isStale()) {
+                continue;
+            }
+            conn.getValuePoints().remove(point.getKey());
+            conn.getPollScheduler().untrack(point);
+            conn.getHistoryBudget().release(point);
+            points.remove(point.getName());
+            node.removeChild(point.getName());
+            removed++;
+        }
+        return removed;
+    }
+
+    //rebuild a data point from the snapshot, its reading is marked stale until OpenZWave reports it
+    protected void restorePoint(DeviceSnapshot.Point p) {
+        ValueId valueId = p.getValueId();
+        if (node.hasChild(p.getName()) && points.containsKey(p.getName())) {
+            return;
+        }
+        NodeBuilder b = node.createChild(p.getName());
+        b.setAttribute("nodeId", new Value(valueId.getNodeId()));
+        b.setAttribute("cc", new Value(valueId.getCommandClassId()));
+        b.setAttribute("instance", new Value(valueId.getInstance()));
+        b.setAttribute("genre", new Value(valueId.getGenre().name()));
+        b.setAttribute("index", new Value(valueId.getIndex()));
+        b.setAttribute("unit", new Value(p.getUnits()));
+        b.setAttribute("type", new Value(valueId.getType().name()));
+        b.setAttribute("stale", new Value(true));
         switch (valueId.getType()) {
             case BOOL:
-                final AtomicReference<Boolean> b = new AtomicReference<>();
-                manager.getValueAsBool(valueId, b);
-                child.setValueType(ValueType.BOOL);
-                val = new Value(b.get());
-                child.setValue(val);
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
+                b.setValueType(ValueType.BOOL);
                 break;
             case BYTE:
-                final AtomicReference<Short> bb = new AtomicReference<>();
-                manager.getValueAsByte(valueId, bb);
-                child.setValueType(ValueType.NUMBER);
-                val = new Value(bb.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
-                break;
             case DECIMAL:
-                final AtomicReference<Float> f = new AtomicReference<>();
-                manager.getValueAsFloat(valueId, f);
-                child.setValueType(ValueType.NUMBER);
-                val = new Value(f.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
-                break;
             case INT:
-                final AtomicReference<Integer> i = new AtomicReference<>();
-                manager.getValueAsInt(valueId, i);
-                child.setValueType(ValueType.NUMBER);
-                val = new Value(i.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
+            case SHORT:
+                b.setValueType(ValueType.NUMBER);
                 break;
-            case LIST:
-                AtomicReference<String> l = new AtomicReference<>();
-                manager.getValueListSelectionString(valueId, l);
-                List<String> ll = new ArrayList<>();
-                manager.getValueListItems(valueId, ll);
-                Set<String> ls = new HashSet<>(ll);
-                child.setValueType(ValueType.makeEnum(ls));
-                val = new Value(l.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
+            case RAW:
+                b.setValueType(ValueType.ARRAY);
                 break;
-            case SCHEDULE:
-                // ToDo
-                //needs to be further implemented
-                //don't have a device to test this data type yet
-                /*AtomicReference<Short> hrs = new AtomicReference<>();
-                AtomicReference<Short> min = new AtomicReference<>();
-                AtomicReference<Byte> sec = new AtomicReference<>();
-                short numPoints = manager.getNumSwitchPoints(valueId);
-                Short[] hours = new Short[numPoints];
-                Short[] minutes = new Short[numPoints];
-                Byte[] setback = new Byte[numPoints];
-                for (short n = 0; n < numPoints; n++) {
-                    manager.getSwitchPoint(valueId, n, hrs, min, sec);
-                    hours[n] = hrs.get();
-                    minutes[n] = min.get();
-                    setback[n] = sec.get();
+            default:
+                //list items are only known once the value is live
+                b.setValueType(ValueType.STRING);
+                break;
+        }
+        b.setValue(p.getValue());
+        Node child = b.build();
+
+        ValuePoint point = new ValuePoint(valueId, child, p.getName(), p.getUnits());
+        point.setStale(true);
+        point.setValue(p.getValue());
+        cachePoint(point);
+        watch(point);
+        restoreHistory(point);
+        if (point.getType() != org.zwave4j.ValueType.RAW) {
+            child.setWritable(Writable.WRITE);
+            child.getListener().setValueHandler(new SetPointHandler(point));
+        }
+        if (points.size() == 1) {
+            addActions(child);
+        }
+    }
+
+    //track the DSA subscriptions of a data point, readings are only published while it is subscribed
+    private void watch(final ValuePoint point) {
+        final Node child = point.getNode();
+        child.getListener().setOnSubscribeHandler(new Handler<Node>() {
+            @Override
+            public void handle(Node event) {
+                point.setSubscribed(true);
+                Value val = point.getValue();
+                if (val != null) {
+                    child.setValue(val);
+                }
+                if (conn.isRefreshOnSubscribe() && !point.isStale()) {
+                    //the handler stays on the node when a rename replaces this device
+                    if (current().isAsleep()) {
+                        conn.getCommandQueue().submitRefresh(point);
+                    } else {
+                        manager.refreshValue(point.getValueId());
+                    }
                 }
+            }
+        });
+        child.getListener().setOnUnsubscribeHandler(new Handler<Node>() {
+            @Override
+            public void handle(Node event) {
+                point.setSubscribed(false);
+            }
+        });
+        //the node may already be subscribed if it was rebuilt (restart, rename)
+        Linkable link = child.getLink();
+        if (link != null && link.getSubscriptionManager() != null) {
+            point.setSubscribed(link.getSubscriptionManager().hasValueSub(child));
+        }
+    }
 
-                child.setValueType(ValueType.STRING);
-                val = new Value("null");
-                child.setValue(val);*/
-                LOGGER.error("ZWave Value Type SCHEDULE is not implemented yet");
+    //store the resolved data point in the connection's cache
+    private void cachePoint(ValuePoint point) {
+        ValuePoint old = points.put(point.getName(), point);
+        if (old != null && old.getKey() != point.getKey()) {
+            conn.getValuePoints().remove(old.getKey());
+        }
+        if (old != null && old != point) {
+            conn.getHistoryBudget().release(old);
+        }
+        conn.getValuePoints().put(point.getKey(), point);
+    }
+
+    //drop all cached data points of this device (node removed from the network)
+    protected void clearPoints() {
+        LongMap<ValuePoint> cache = conn.getValuePoints();
+        for (ValuePoint point : points.values()) {
+            cache.remove(point.getKey());
+            conn.getPollScheduler().untrack(point);
+            conn.getHistoryBudget().release(point);
+        }
+        points.clear();
+    }
+
+    //data points of this device keyed by node name
+    public Map<String, ValuePoint> getPoints() {
+        return points;
+    }
+
+    //set up the DSA node of a data point once: value type, list items and the write handler
+    private void initPoint(ValuePoint point) {
+        final ValueId valueId = point.getValueId();
+        Node child = point.getNode();
+        switch (valueId.getType()) {
+            case BOOL:
+                child.setValueType(ValueType.BOOL);
                 break;
+            case BYTE:
+            case DECIMAL:
+            case INT:
             case SHORT:
-                AtomicReference<Short> s = new AtomicReference<>();
-                manager.getValueAsShort(valueId, s);
                 child.setValueType(ValueType.NUMBER);
-                val = new Value(s.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
+                break;
+            case LIST:
+                List<String> items = new ArrayList<>();
+                manager.getValueListItems(valueId, items);
+                child.setValueType(ValueType.makeEnum(new LinkedHashSet<>(items)));
                 break;
             case STRING:
-                final AtomicReference<String> ss = new AtomicReference<>();
-                manager.getValueAsString(valueId, ss);
                 child.setValueType(ValueType.STRING);
-                val = new Value(ss.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));
                 break;
+            case RAW:
+                child.setValueType(ValueType.ARRAY);
+                return;
+            case SCHEDULE:
+                // ToDo
+                //needs to be further implemented
+                //don't have a device to test this data type yet
+                LOGGER.error("ZWave Value Type SCHEDULE is not implemented yet");
+                return;
             case BUTTON:
                 // ToDo
-                /*AtomicReference<Boolean> bt = new AtomicReference<>();
-                manager.getValueAsBool(valueId, bt);
-                child.setValueType(ValueType.BOOL);
-                val = new Value(bt.get());
-                child.setValue(val);
-
-                child.setWritable(Writable.WRITE);
-                child.getListener().setValueHandler(new SetPointHandler(child));*/
                 LOGGER.error("ZWave Value Type BUTTON is not implemented yet");
-                break;
-            case RAW:
-                final AtomicReference<short[]> sss = new AtomicReference<>();
-                manager.getValueAsRaw(valueId, sss);
-                valJson = new JsonArray();
-                short[] shorts = sss.get();
-                for (int j : shorts) {
-                    valJson.add(shorts[j]);
-                }
-                child.setValueType(ValueType.ARRAY);
-                val = new Value(valJson);
-                child.setValue(val);
-                break;
+                return;
             default:
                 // ToDo
                 LOGGER.info("setValue - unknown ValueId type");
                 child.setValueType(ValueType.STRING);
-                val = new Value("null");
-                child.setValue(val);
+                child.setValue(new Value("null"));
+                return;
         }
-        //LOGGER.info("Value set - " + valueId.getNodeId());
+        child.setWritable(Writable.WRITE);
+        child.getListener().setValueHandler(new SetPointHandler(point));
     }
 
-    //set the user-enetered value of a data point
-    private void sendValue(Node kid, ValuePair event) {
-        ValueId valId;
-        String type = kid.getAttribute("type").getString();
-        switch (type) {
-            case "BOOL":
-                final boolean entryBool = event.getCurrent().getBool();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.BOOL);
-                manager.setValueAsBool(valId, entryBool);
-                break;
-            case "BYTE":
-                final byte entryByte = event.getCurrent().getNumber().byteValue();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.BYTE);
-                manager.setValueAsByte(valId, entryByte);
-                break;
-            case "DECIMAL":
-                float entryDecimal = event.getCurrent().getNumber().floatValue();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.DECIMAL);
-                manager.setValueAsFloat(valId, entryDecimal);
-                break;
-            case "INT":
-                final int entryInt = event.getCurrent().getNumber().intValue();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.INT);
-                manager.setValueAsInt(valId, entryInt);
-                break;
-            case "LIST":
-                String entryList = event.getCurrent().getString();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.LIST);
-                manager.setValueListSelection(valId, entryList);
-                break;
-            case "SCHEDULE":
-                // ToDo
-                //this ZWave data type is not fully implemented (device that uses this type was
-                //not available during development)
-                /*short hours = event.getCurrent().getNumber().shortValue();
-                short minutes = event.getCurrent().getNumber().shortValue();
-                byte setback = event.getCurrent().getNumber().byteValue();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.SCHEDULE);
-                manager.setSwitchPoint(valId, hours, minutes, setback);*/
-                LOGGER.error("Setting an unimplemented ZWave data type - SCHEDULE");
-                break;
-            case "SHORT":
-                short entryShort = event.getCurrent().getNumber().shortValue();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.SHORT);
-                manager.setValueAsInt(valId, entryShort);
-                break;
-            case "STRING":
-                String entryString = event.getCurrent().getString();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.STRING);
-                manager.setValueAsString(valId, entryString);
-                break;
-            case "BUTTON":
-                //this ZWave data type is not implemented (device that uses this data
-                //type was not available during development
-                /*boolean entryButton = event.getCurrent().getBool();
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.BUTTON);
-                if (entryButton) {
-                    manager.pressButton(valId);
-                } else {
-                    manager.releaseButton(valId);
-                }*/
-                LOGGER.error("Setting an unimplemented ZWave data type - BUTTON");
-                break;
-            case "RAW":
-                JsonArray entryJson = event.getCurrent().getArray();
-                final short[] shorts = new short[entryJson.size()];
-                for (int i = 0; i < entryJson.size(); i++) {
-                    shorts[i] = entryJson.get(i);
-                }
-                valId = new ValueId(homeId,
-                        kid.getAttribute("nodeId").getNumber().shortValue(),
-                        returnGenre(kid),
-                        kid.getAttribute("cc").getNumber().shortValue(),
-                        kid.getAttribute("instance").getNumber().shortValue(),
-                        kid.getAttribute("index").getNumber().shortValue(),
-                        org.zwave4j.ValueType.RAW);
-                manager.setValueAsRaw(valId, shorts);
-                break;
-            default:
-                LOGGER.info("sendValue - unknown org.zwave4j.ValueType");
-        }
-        LOGGER.info("Value sent - " + kid.getAttribute("nodeId"));
-    }
-
-    //helper method that returns the ValueGenre of a ZWave data point
-    protected ValueGenre returnGenre (Node child) {
-        LOGGER.info("Returned genre - " + child.getAttribute("nodeId"));
-        switch (child.getAttribute("genre").toString()) {
-            case "BASIC":
-                return ValueGenre.BASIC;
-            case "CONFIG":
-                return ValueGenre.CONFIG;
-            case "COUNT":
-                return ValueGenre.COUNT;
-            case "SYSTEM":
-                return ValueGenre.SYSTEM;
-            case "USER":
-                return ValueGenre.USER;
+    //get the value from ZWave and set it to the data point, returns false if it did not change
+    private boolean setValue(ValuePoint point) {
+        if (point.isStale()) {
+            point.setStale(false);
+            point.getNode().removeAttribute("stale");
+        }
+        switch (point.getType()) {
+            case SCHEDULE:
+            case BUTTON:
+                conn.getMetrics().unsupportedValue();
+                return false;
             default:
-                LOGGER.info("returnGenre - unknown ValueGenre");
-                return null;
+                break;
+        }
+        Value val = conn.getValueReader().read(manager, point);
+        if (val == null) {
+            //same reading as before, nothing to publish
+            return false;
+        }
+        point.setValue(val);
+        //LOGGER.info("Value set - " + valueId.getNodeId());
+        return true;
+    }
+
+    //queue the user-entered value of a data point, the connection's write queue sends it
+    private void sendValue(ValuePoint point, ValuePair event) {
+        point.markOverridden();
+        if (!conn.getCommandQueue().submit(point, event.getCurrent())) {
+            LOGGER.warn("Write queue full, value dropped - " + nodeId + ", " + point.getName());
+            point.revert();
+        } else if (getHealth() == Health.DEAD) {
+            LOGGER.info("Node {} is dead, write parked - {}", nodeId, point.getName());
+        } else if (isAsleep()) {
+            LOGGER.info("Node {} is asleep, write parked until it wakes up - {}", nodeId, point.getName());
         }
     }
 }
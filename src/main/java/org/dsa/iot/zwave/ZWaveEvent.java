@@ -0,0 +1,111 @@
+package org.dsa.iot.zwave;
+
+import org.zwave4j.Manager;
+import org.zwave4j.Notification;
+import org.zwave4j.NotificationType;
+import org.zwave4j.ValueId;
+
+//immutable copy of an OpenZWave notification
+//the native Notification is only valid during the watcher callback, so everything the
+//handlers need is copied out here before the event is handed to the dispatcher thread
+public class ZWaveEvent {
+
+    private final NotificationType type;
+    private final long homeId;
+    private final short nodeId;
+    private final ValueId valueId;
+    private final short groupIdx;
+    private final short event;
+    private final short buttonId;
+    private final short sceneId;
+    private final short notification;
+    private final short byteValue;
+    private final String valueLabel;
+    private final long received;
+
+    public ZWaveEvent(NotificationType type, long homeId, short nodeId, ValueId valueId,
+                      short groupIdx, short event, short buttonId, short sceneId,
+                      short notification, short byteValue, String valueLabel) {
+        this.type = type;
+        this.homeId = homeId;
+        this.nodeId = nodeId;
+        this.valueId = valueId;
+        this.groupIdx = groupIdx;
+        this.event = event;
+        this.buttonId = buttonId;
+        this.sceneId = sceneId;
+        this.notification = notification;
+        this.byteValue = byteValue;
+        this.valueLabel = valueLabel;
+        this.received = System.nanoTime();
+    }
+
+    //copy the fields of a notification (called on the OpenZWave callback thread)
+    public static ZWaveEvent copyOf(Notification n, Manager manager) {
+        NotificationType type = n.getType();
+        String label = null;
+        // the value is gone by the time the dispatcher handles the removal,
+        // so its label has to be captured while the notification is still live
+        if (type == NotificationType.VALUE_REMOVED) {
+            label = manager.getValueLabel(n.getValueId());
+        }
+        return new ZWaveEvent(type, n.getHomeId(), n.getNodeId(), n.getValueId(),
+                n.getGroupIdx(), n.getEvent(), n.getButtonId(), n.getSceneId(),
+                n.getNotification(), n.getByte(), label);
+    }
+
+    public NotificationType getType() {
+        return type;
+    }
+
+    public long getHomeId() {
+        return homeId;
+    }
+
+    public short getNodeId() {
+        return nodeId;
+    }
+
+    public ValueId getValueId() {
+        return valueId;
+    }
+
+    public short getGroupIdx() {
+        return groupIdx;
+    }
+
+    public short getEvent() {
+        return event;
+    }
+
+    public short getButtonId() {
+        return buttonId;
+    }
+
+    public short getSceneId() {
+        return sceneId;
+    }
+
+    public short getNotification() {
+        return notification;
+    }
+
+    public short getByte() {
+        return byteValue;
+    }
+
+    //label of the value, only captured for VALUE_REMOVED
+    public String getValueLabel() {
+        return valueLabel;
+    }
+
+    //System.nanoTime() at which the notification was received
+    public long getReceived() {
+        return received;
+    }
+
+    //true for notifications that only carry a new reading of an existing value
+    public boolean isValueUpdate() {
+        return type == NotificationType.VALUE_CHANGED || type == NotificationType.VALUE_REFRESHED;
+    }
+}
@@ -1,33 +1,30 @@
 package org.dsa.iot.zwave;
 
-import jssc.SerialNativeInterface;
-import jssc.SerialPortList;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.NodeBuilder;
 import org.dsa.iot.dslink.node.Permission;
+import org.dsa.iot.dslink.node.Writable;
 import org.dsa.iot.dslink.node.actions.Action;
 import org.dsa.iot.dslink.node.actions.ActionResult;
 import org.dsa.iot.dslink.node.actions.Parameter;
+import org.dsa.iot.dslink.node.actions.ResultType;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValueType;
 import org.dsa.iot.dslink.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.dsa.iot.dslink.util.handler.Handler;
-import org.zwave4j.NativeLibraryLoader;
+import org.zwave4j.Manager;
 import org.zwave4j.Options;
-import org.zwave4j.ZWave4j;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.TimeUnit;
 
 public class ZWaveLink {
 
@@ -39,6 +36,10 @@ public class ZWaveLink {
 
 	private Node node;
     private boolean locked = false;
+    private NotificationRouter router;
+    private PollScheduler pollScheduler;
+    private HistoryBudget historyBudget;
+    private PortInventory ports;
 
     //constructor, initialize "node"
 	private ZWaveLink(Node node) {
@@ -51,12 +52,44 @@ public class ZWaveLink {
 		zwave.init();
 	}
 
+    //test hook for the benchmarks in src/jmh, not part of the link's API: a link with only the
+    //poll scheduler and history budget a ZWaveConn needs, no native library, ports or actions
+    static ZWaveLink detached(Node parent) {
+        ZWaveLink zwave = new ZWaveLink(parent);
+        zwave.pollScheduler = new PollScheduler();
+        zwave.historyBudget = new HistoryBudget();
+        return zwave;
+    }
+
     //load native library, build action for loading path and comm port
 	private void init() {
-        NativeLibraryLoader.loadLibrary(ZWave4j.LIBRARY_NAME, ZWave4j.class);
-        options();
-        LOGGER.info("Native library loaded");
+        long start = System.nanoTime();
+        long loaded = start;
+        long configured = start;
+        try {
+            new NativeLibraryCache(new File("zwave-native")).load();
+            loaded = System.nanoTime();
+            options();
+            configured = System.nanoTime();
+            LOGGER.info("Native library loaded");
+            router = new NotificationRouter(new NativeManager(Manager.create()));
+        } catch (UnsatisfiedLinkError | RuntimeException e) {
+            //keep the link up, simulated networks do not need the native library
+            LOGGER.error("Native library not available, only simulated networks can be used", e);
+        }
+        pollScheduler = new PollScheduler();
+        historyBudget = new HistoryBudget();
+        Value hb = node.getAttribute("history budget");
+        if (hb != null && hb.getNumber() != null) {
+            historyBudget.setBudget(hb.getNumber().longValue());
+        }
+        ports = new PortInventory(this);
         restoreLastSession();
+        //after the restored connections, so the ports they use are not probed
+        ports.start();
+        initPolling();
+        initHistory();
+        initPorts();
 
         {
             final Action act = connAction();
@@ -67,22 +100,47 @@ public class ZWaveLink {
             b.getListener().setOnListHandler(new Handler<Node>() {
                 @Override
                 public void handle(Node event) {
-                    Objects.getDaemonThreadPool().execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            Set<String> ports = findPorts();
-                            List<Parameter> params = new LinkedList<>();
-                            params.add(new Parameter("Name", ValueType.STRING, new Value("USB Port")));
-                            params.add(new Parameter("Comm Port ID", ValueType.makeEnum(ports)));
-                            act.setParams(params);
-                        }
-                    });
+                    List<Parameter> params = new LinkedList<>();
+                    params.add(new Parameter("Name", ValueType.STRING, new Value("USB Port")));
+                    params.add(new Parameter("Comm Port ID", ValueType.makeEnum(findPorts())));
+                    act.setParams(params);
                 }
             });
             b.build();
         }
+
+        {
+            NodeBuilder b = node.createChild("addSimulatedNetwork");
+            b.setDisplayName("Add Simulated Network");
+            b.setSerializable(false);
+            b.setAction(simulationAction());
+            b.build();
+        }
+
+        long ready = System.nanoTime();
+        NodeBuilder b = node.createChild("Startup");
+        b.setSerializable(false);
+        Node startup = b.build();
+        startupTime(startup, "Native Library", loaded - start);
+        startupTime(startup, "Config", configured - loaded);
+        startupTime(startup, "Total", ready - start);
+        LOGGER.info("Startup took {} ms (native library {} ms, config {} ms)",
+                TimeUnit.NANOSECONDS.toMillis(ready - start),
+                TimeUnit.NANOSECONDS.toMillis(loaded - start),
+                TimeUnit.NANOSECONDS.toMillis(configured - loaded));
 	}
 
+    //publish the duration of a startup phase in milliseconds
+    private void startupTime(Node parent, String name, long nanos) {
+        NodeBuilder b = parent.createChild(name);
+        b.setValueType(ValueType.NUMBER);
+        b.setValue(new Value(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        b.setAttribute("unit", new Value("ms"));
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+    }
+
     //reload the nodes and objects used during the last application execution
     private void restoreLastSession() {
         Map<String, Node> children = node.getChildren();
@@ -99,6 +157,170 @@ public class ZWaveLink {
         }
     }
 
+    //shared watcher and manager of all connections
+    protected NotificationRouter getRouter() {
+        return router;
+    }
+
+    //poll scheduler of all connections, the poll interval is shared by the Manager
+    protected PollScheduler getPollScheduler() {
+        return pollScheduler;
+    }
+
+    //memory budget of the value histories of all connections
+    protected HistoryBudget getHistoryBudget() {
+        return historyBudget;
+    }
+
+    //build the history nodes, the budget itself is restored before the connections start
+    private void initHistory() {
+        NodeBuilder hb = node.createChild("History");
+        hb.setSerializable(false);
+        Node history = hb.build();
+        pollingValue(history, "History Buffers", null);
+        pollingValue(history, "Memory Used", "KB");
+        pollingValue(history, "Memory Budget", "KB");
+        history.createChild("Set History Budget").setAction(historyBudgetAction()).setSerializable(false).build();
+        updateHistoryNodes();
+
+        Objects.getDaemonThreadPool().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                updateHistoryNodes();
+            }
+        }, 10, 10, TimeUnit.SECONDS);
+    }
+
+    //publish the memory used by the value histories
+    private void updateHistoryNodes() {
+        Node history = node.getChild("History");
+        if (history == null) {
+            return;
+        }
+        history.getChild("History Buffers").setValue(new Value(historyBudget.getBuffers()));
+        history.getChild("Memory Used").setValue(new Value(historyBudget.getUsed()));
+        history.getChild("Memory Budget").setValue(new Value(historyBudget.getBudget()));
+    }
+
+    //action method to set the memory budget of the value histories
+    private Action historyBudgetAction() {
+        Action act = new Action(Permission.WRITE, new HistoryBudgetHandler());
+        act.addParameter(new Parameter("Memory Budget", ValueType.NUMBER,
+                new Value(historyBudget.getBudget()))
+                .setDescription("Kilobytes all value histories together may use, "
+                        + ValueHistory.BYTES_PER_SAMPLE + " bytes per sample"));
+        return act;
+    }
+
+    //handler for setting the memory budget of the value histories
+    private class HistoryBudgetHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            long budget = event.getParameter("Memory Budget", ValueType.NUMBER).getNumber().longValue();
+            historyBudget.setBudget(budget);
+            node.setAttribute("history budget", new Value(historyBudget.getBudget()));
+            updateHistoryNodes();
+            node.getChild("History").getChild("Set History Budget").setAction(historyBudgetAction());
+            if (historyBudget.getUsed() > historyBudget.getBudget()) {
+                LOGGER.warn("History budget {} KB is below the {} KB in use, new histories are refused",
+                        historyBudget.getBudget(), historyBudget.getUsed());
+            } else {
+                LOGGER.info("History budget: {} KB", historyBudget.getBudget());
+            }
+        }
+    }
+
+    //build the polling nodes and run the poll scheduler
+    private void initPolling() {
+        double budget = PollScheduler.DEFAULT_BUDGET;
+        long minInterval = PollScheduler.DEFAULT_MIN_INTERVAL;
+        Value v = node.getAttribute("poll budget");
+        if (v != null && v.getNumber() != null) {
+            budget = v.getNumber().doubleValue();
+        }
+        v = node.getAttribute("poll min interval");
+        if (v != null && v.getNumber() != null) {
+            minInterval = v.getNumber().longValue();
+        }
+        pollScheduler.setLimits(budget, minInterval);
+
+        NodeBuilder pb = node.createChild("Polling");
+        pb.setSerializable(false);
+        Node polling = pb.build();
+        pollingValue(polling, "Polled Values", null);
+        pollingValue(polling, "Poll Interval", "ms");
+        pollingValue(polling, "Polls Per Second", null);
+        pollingValue(polling, "Airtime Budget", "%");
+        pollingValue(polling, "Minimum Interval", "ms");
+        polling.createChild("Set Polling Limits").setAction(pollingLimitsAction()).setSerializable(false).build();
+        updatePollingNodes();
+
+        Objects.getDaemonThreadPool().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pollScheduler.adjust();
+                    updatePollingNodes();
+                } catch (Exception e) {
+                    LOGGER.warn("Poll scheduler failed", e);
+                }
+            }
+        }, 10, 10, TimeUnit.SECONDS);
+    }
+
+    private void pollingValue(Node parent, String name, String unit) {
+        NodeBuilder b = parent.createChild(name);
+        b.setValueType(ValueType.NUMBER);
+        b.setValue(new Value(0));
+        if (unit != null) {
+            b.setAttribute("unit", new Value(unit));
+        }
+        b.setWritable(Writable.NEVER);
+        b.setSerializable(false);
+        b.build();
+    }
+
+    //publish the current state of the poll scheduler
+    private void updatePollingNodes() {
+        Node polling = node.getChild("Polling");
+        if (polling == null) {
+            return;
+        }
+        polling.getChild("Polled Values").setValue(new Value(pollScheduler.getPolledCount()));
+        polling.getChild("Poll Interval").setValue(new Value(pollScheduler.getInterval()));
+        polling.getChild("Polls Per Second").setValue(new Value(pollScheduler.getPollRate()));
+        polling.getChild("Airtime Budget").setValue(new Value(pollScheduler.getBudget() * 100));
+        polling.getChild("Minimum Interval").setValue(new Value(pollScheduler.getMinInterval()));
+    }
+
+    //action method to set the limits of the poll scheduler
+    private Action pollingLimitsAction() {
+        Action act = new Action(Permission.WRITE, new PollingLimitsHandler());
+        act.addParameter(new Parameter("Airtime Budget", ValueType.NUMBER,
+                new Value(pollScheduler.getBudget() * 100))
+                .setDescription("Percent of each controller's command rate polling may use"));
+        act.addParameter(new Parameter("Minimum Interval", ValueType.NUMBER,
+                new Value(pollScheduler.getMinInterval()))
+                .setDescription("Shortest time in milliseconds for a full poll cycle"));
+        return act;
+    }
+
+    //handler for setting the limits of the poll scheduler
+    private class PollingLimitsHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            double budget = event.getParameter("Airtime Budget", ValueType.NUMBER).getNumber().doubleValue() / 100;
+            long minInterval = event.getParameter("Minimum Interval", ValueType.NUMBER).getNumber().longValue();
+            pollScheduler.setLimits(budget, minInterval);
+            node.setAttribute("poll budget", new Value(pollScheduler.getBudget()));
+            node.setAttribute("poll min interval", new Value(pollScheduler.getMinInterval()));
+            updatePollingNodes();
+            node.getChild("Polling").getChild("Set Polling Limits").setAction(pollingLimitsAction());
+            LOGGER.info("Polling limits: {}% airtime, {} ms minimum interval",
+                    pollScheduler.getBudget() * 100, pollScheduler.getMinInterval());
+        }
+    }
+
     //create action tree for setting the comm port
     private Action connAction() {
         Action act = new Action(Permission.WRITE, new AddConnHandler());
@@ -108,6 +330,46 @@ public class ZWaveLink {
         return act;
     }
 
+    //action method to add an in-memory network for load tests
+    private Action simulationAction() {
+        Action act = new Action(Permission.WRITE, new AddSimulationHandler());
+        act.addParameter(new Parameter("Name", ValueType.STRING, new Value("Simulated Network")));
+        act.addParameter(new Parameter("Nodes", ValueType.NUMBER, new Value(20))
+                .setDescription("Devices in the network, at most " + SimulatedManager.MAX_NODES));
+        act.addParameter(new Parameter("Values Per Node", ValueType.NUMBER, new Value(10)));
+        act.addParameter(new Parameter("Changes Per Second", ValueType.NUMBER, new Value(10))
+                .setDescription("Value changes across the network"));
+        act.addParameter(new Parameter("Sleeping Nodes", ValueType.NUMBER, new Value(10))
+                .setDescription("Percent of the devices that only report when they wake up"));
+        return act;
+    }
+
+    //create a connection to a simulated network
+    private class AddSimulationHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            String name = event.getParameter("Name", ValueType.STRING).getString();
+            if (name.isEmpty()) {
+                LOGGER.warn("Missing parameter - Name is required");
+                return;
+            }
+            if (node.hasChild(name)) {
+                LOGGER.warn("Connection with that name already exists");
+                return;
+            }
+            NodeBuilder b = node.createChild(name);
+            b.setAttribute("comm port id", new Value("sim:" + name));
+            b.setAttribute("simulated", new Value(true));
+            b.setAttribute("sim nodes", event.getParameter("Nodes", ValueType.NUMBER));
+            b.setAttribute("sim values", event.getParameter("Values Per Node", ValueType.NUMBER));
+            b.setAttribute("sim change rate", event.getParameter("Changes Per Second", ValueType.NUMBER));
+            b.setAttribute("sim sleeping", event.getParameter("Sleeping Nodes", ValueType.NUMBER));
+            Node child = b.build();
+            ZWaveConn conn = new ZWaveConn(ZWaveLink.this, child);
+            conn.start();
+        }
+    }
+
     //set and lock the Options object
     private void options() {
         if (locked) {
@@ -124,49 +386,15 @@ public class ZWaveLink {
         }
         if (!jar.isDirectory()) {
             final File basePath = new File("zwave-config");
-            if (basePath.exists()) {
-                configPath = basePath.getAbsolutePath();
-            } else {
-                if (!basePath.mkdir()) {
-                    throw new RuntimeException("Failed to create config dir");
-                }
-
-                try {
-                    ZipFile zf = new ZipFile(jar);
-                    Enumeration<? extends ZipEntry> entries = zf.entries();
-                    while (entries.hasMoreElements()) {
-                        ZipEntry entry = entries.nextElement();
-                        String name = entry.getName();
-                        if (name.startsWith("config/")) {
-                            name = name.substring(7);
-                            File f = new File(basePath, name);
-                            if (entry.isDirectory()) {
-                                continue;
-                            }
-
-                            File parent = f.getParentFile();
-                            if (!(parent.exists() || parent.mkdirs())) {
-                                String dir = parent.getAbsolutePath();
-                                LOGGER.error("Failed to create dir: {}", dir);
-                            }
-
-                            FileOutputStream stream = new FileOutputStream(f);
-                            int read;
-                            byte[] buf = new byte[4096];
-                            InputStream is = zf.getInputStream(entry);
-                            while ((read = is.read(buf, 0, buf.length)) > -1) {
-                                stream.write(buf, 0, read);
-                            }
-                            is.close();
-                            stream.close();
-                        }
-                    }
-                    zf.close();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            try {
+                int written = new ConfigExtractor(jar, basePath).extract();
+                if (written > 0) {
+                    LOGGER.info("Extracted {} config files", written);
                 }
-                configPath = basePath.getAbsolutePath();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
             }
+            configPath = basePath.getAbsolutePath();
         } else {
             URL url = getClass().getResource("/config");
             configPath = url.toString().replaceFirst("file:", "");
@@ -183,7 +411,7 @@ public class ZWaveLink {
     private class AddConnHandler implements Handler<ActionResult> {
         @Override
         public void handle(ActionResult event) {
-            if (!locked) { options(); }
+            if (!locked && router != null) { options(); }
             String name = event.getParameter("Name", ValueType.STRING).getString();
             if (name.isEmpty()) {
                 LOGGER.warn("Missing parameter - Name is required");
@@ -194,12 +422,17 @@ public class ZWaveLink {
                 return;
             }
             String commPort = event.getParameter("Comm Port ID").getString();
-            NodeBuilder b = node.createChild(name);
-            b.setDisplayName(name);
-            b.setAttribute("comm port id", new Value(commPort));
-            Node child = b.build();
-            ZWaveConn conn = new ZWaveConn(ZWaveLink.this, child);
-            conn.start();
+            ports.claim(commPort);
+            try {
+                NodeBuilder b = node.createChild(name);
+                b.setDisplayName(name);
+                b.setAttribute("comm port id", new Value(commPort));
+                Node child = b.build();
+                ZWaveConn conn = new ZWaveConn(ZWaveLink.this, child);
+                conn.start();
+            } finally {
+                ports.release(commPort);
+            }
         }
     }
 
@@ -210,25 +443,68 @@ public class ZWaveLink {
         LOGGER.info("Disconnected from comm port");
     }
 
-    //find comm ports and return them for listing in the action tree
+    //comm ports for listing in the action tree, served from the port inventory
     protected Set<String> findPorts() {
-        String[] portNames;
-
-        switch(SerialNativeInterface.getOsType()){
-            case SerialNativeInterface.OS_LINUX:
-                portNames = SerialPortList.getPortNames
-                        (Pattern.compile("(cu|ttyS|ttyUSB|ttyACM|ttyAMA|rfcomm|ttyO)[0-9]{1,3}"));
-                break;
-            case SerialNativeInterface.OS_MAC_OS_X:
-                portNames = SerialPortList.getPortNames(Pattern.compile("(cu|tty)..*"));
-                break;
-            default:
-                portNames = SerialPortList.getPortNames();
-                break;
-        }
-        Set<String> ports = new HashSet<>();
-
-        Collections.addAll(ports, portNames);
+        return ports.getPorts();
+    }
+
+    //port inventory shared by the connections
+    protected PortInventory getPortInventory() {
         return ports;
     }
+
+    //comm ports of the connections, they are not probed while OpenZWave has them open
+    protected Set<String> getPortsInUse() {
+        Set<String> inUse = new HashSet<>();
+        Map<String, Node> children = node.getChildren();
+        if (children == null) {
+            return inUse;
+        }
+        for (Node child : children.values()) {
+            Value port = child.getAttribute("comm port id");
+            if (port != null && port.getString() != null) {
+                inUse.add(port.getString());
+            }
+        }
+        return inUse;
+    }
+
+    //build the node listing the serial ports and the controllers found on them
+    private void initPorts() {
+        NodeBuilder pb = node.createChild("Serial Ports");
+        pb.setSerializable(false);
+        Node serial = pb.build();
+
+        Action list = new Action(Permission.READ, new ListPortsHandler());
+        list.addResult(new Parameter("Port", ValueType.STRING));
+        list.addResult(new Parameter("Controller", ValueType.STRING));
+        list.addResult(new Parameter("Version", ValueType.STRING));
+        list.addResult(new Parameter("In Use", ValueType.BOOL));
+        list.setResultType(ResultType.TABLE);
+        serial.createChild("List Ports").setAction(list).setSerializable(false).build();
+
+        //opens every port, including consoles and modems, so it only runs on request
+        serial.createChild("Rescan Ports").setAction(new Action(Permission.WRITE, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                ports.rescan();
+            }
+        })).setSerializable(false).build();
+    }
+
+    //handler listing the cached ports, Controller is UNKNOWN for ports not probed (yet), non-USB
+    //ports are only probed by Rescan Ports
+    private class ListPortsHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            Set<String> inUse = getPortsInUse();
+            Table table = event.getTable();
+            for (String port : ports.getPorts()) {
+                String version = ports.getVersion(port);
+                String controller = version == null ? "UNKNOWN" : (version.isEmpty() ? "NO" : "YES");
+                table.addRow(Row.make(new Value(port), new Value(controller),
+                        new Value(version == null ? "" : version), new Value(inUse.contains(port))));
+            }
+        }
+    }
 }
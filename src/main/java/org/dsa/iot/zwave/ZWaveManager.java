@@ -0,0 +1,145 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.zwave4j.ValueId;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+//the OpenZWave Manager operations the link uses
+//NativeManager delegates to zwave4j, SimulatedManager runs an in-memory network so the link
+//can be exercised without a controller or the native library
+public interface ZWaveManager {
+
+    //receive the notifications of every controller of this manager (called on its own thread)
+    void addEventHandler(Handler<ZWaveEvent> handler);
+
+    boolean addDriver(String port);
+
+    boolean removeDriver(String port);
+
+    String getControllerPath(long homeId);
+
+    short getControllerNodeId(long homeId);
+
+    void writeConfig(long homeId);
+
+    boolean requestNodeState(long homeId, short nodeId);
+
+    boolean refreshNodeInfo(long homeId, short nodeId);
+
+    String getNodeProductName(long homeId, short nodeId);
+
+    boolean isNodeFailed(long homeId, short nodeId);
+
+    boolean isNodeListeningDevice(long homeId, short nodeId);
+
+    boolean isNodeFrequentListeningDevice(long homeId, short nodeId);
+
+    String getNodeQueryStage(long homeId, short nodeId);
+
+    void testNetworkNode(long homeId, short nodeId, int count);
+
+    void switchAllOn(long homeId);
+
+    void switchAllOff(long homeId);
+
+    String getValueLabel(ValueId valueId);
+
+    String getValueUnits(ValueId valueId);
+
+    boolean refreshValue(ValueId valueId);
+
+    boolean getValueAsBool(ValueId valueId, AtomicReference<Boolean> value);
+
+    boolean getValueAsByte(ValueId valueId, AtomicReference<Short> value);
+
+    boolean getValueAsFloat(ValueId valueId, AtomicReference<Float> value);
+
+    boolean getValueAsInt(ValueId valueId, AtomicReference<Integer> value);
+
+    boolean getValueAsShort(ValueId valueId, AtomicReference<Short> value);
+
+    boolean getValueAsString(ValueId valueId, AtomicReference<String> value);
+
+    boolean getValueAsRaw(ValueId valueId, AtomicReference<short[]> value);
+
+    boolean getValueListSelectionString(ValueId valueId, AtomicReference<String> value);
+
+    boolean getValueListItems(ValueId valueId, List<String> items);
+
+    boolean setValueAsBool(ValueId valueId, boolean value);
+
+    boolean setValueAsByte(ValueId valueId, short value);
+
+    boolean setValueAsFloat(ValueId valueId, float value);
+
+    boolean setValueAsInt(ValueId valueId, int value);
+
+    boolean setValueAsShort(ValueId valueId, short value);
+
+    boolean setValueAsString(ValueId valueId, String value);
+
+    boolean setValueAsRaw(ValueId valueId, short[] value);
+
+    boolean setValueListSelection(ValueId valueId, String item);
+
+    boolean enablePoll(ValueId valueId, short intensity);
+
+    boolean disablePoll(ValueId valueId);
+
+    boolean isPolled(ValueId valueId);
+
+    void setPollIntensity(ValueId valueId, short intensity);
+
+    short getPollIntensity(ValueId valueId);
+
+    void setPollInterval(int millis, boolean intervalBetweenPolls);
+
+    //scenes, OpenZWave keeps them in zwscene.xml and sets all their values on activation
+    short createScene();
+
+    boolean removeScene(short sceneId);
+
+    boolean sceneExists(short sceneId);
+
+    boolean activateScene(short sceneId);
+
+    String getSceneLabel(short sceneId);
+
+    void setSceneLabel(short sceneId, String label);
+
+    boolean addSceneValue(short sceneId, ValueId valueId, boolean value);
+
+    boolean addSceneValue(short sceneId, ValueId valueId, float value);
+
+    boolean addSceneValue(short sceneId, ValueId valueId, int value);
+
+    boolean addSceneValue(short sceneId, ValueId valueId, short value);
+
+    boolean addSceneValue(short sceneId, ValueId valueId, String value);
+
+    boolean addSceneValueListSelection(short sceneId, ValueId valueId, String item);
+
+    boolean removeSceneValue(short sceneId, ValueId valueId);
+
+    //association groups, changes are confirmed by a GROUP notification
+    short getNumGroups(long homeId, short nodeId);
+
+    long getAssociations(long homeId, short nodeId, short groupIdx, AtomicReference<short[]> associations);
+
+    short getMaxAssociations(long homeId, short nodeId, short groupIdx);
+
+    String getGroupLabel(long homeId, short nodeId, short groupIdx);
+
+    void addAssociation(long homeId, short nodeId, short groupIdx, short targetNodeId);
+
+    void removeAssociation(long homeId, short nodeId, short groupIdx, short targetNodeId);
+
+    //mesh topology and heal (neighbor update, optionally with return route updates)
+    long getNodeNeighbors(long homeId, short nodeId, AtomicReference<short[]> neighbors);
+
+    void healNetworkNode(long homeId, short nodeId, boolean doReturnRoutes);
+
+    void healNetwork(long homeId, boolean doReturnRoutes);
+}
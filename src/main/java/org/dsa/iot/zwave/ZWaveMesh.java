@@ -0,0 +1,463 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.NodeBuilder;
+import org.dsa.iot.dslink.node.Permission;
+import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.actions.Action;
+import org.dsa.iot.dslink.node.actions.ActionResult;
+import org.dsa.iot.dslink.node.actions.Parameter;
+import org.dsa.iot.dslink.node.actions.ResultType;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+//mesh maintenance of a controller: the neighbor topology and staggered heals
+//a heal makes a node rediscover its neighbors and, with return routes, updates the routes the
+//controller uses to reach it; heals are heavy on the mesh, so they run one node at a time
+//(up to the concurrency limit), spaced apart and, when scheduled, only inside the maintenance
+//window; each node is pinged (NoOperation) before the heal and again once it has settled
+public class ZWaveMesh {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(ZWaveMesh.class);
+    }
+
+    private static final long PING_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    private static final long SETTLE_TIME = TimeUnit.SECONDS.toNanos(60); //time a neighbor update takes
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    //progress of a node's heal
+    public enum State {
+        QUEUED, PROBING, HEALING, VERIFYING, DONE
+    }
+
+    //a node's heal and the ping latency around it
+    private static class Heal {
+        private final short nodeId;
+        private boolean manual; //requested by an action, may run outside the window
+        private boolean returnRoutes;
+        private State state = State.QUEUED;
+        private long since; //nanoTime of the last state change
+        private long healed; //currentTimeMillis the heal was sent
+        private double before = -1; //milliseconds
+        private double after = -1; //milliseconds
+        private boolean finished; //done, the topology of the node is not yet refreshed
+
+        private Heal(short nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        private boolean isActive() {
+            return state == State.PROBING || state == State.HEALING || state == State.VERIFYING;
+        }
+    }
+
+    private final ZWaveConn conn;
+    private final Node parent;
+    private final Map<Short, Heal> heals = new LinkedHashMap<>();
+    private int windowStart = 2 * 60; //minutes after midnight
+    private int windowLength; //minutes, 0 disables the scheduled heal
+    private int concurrency = 1;
+    private long spacing = 60; //seconds between starting two heals
+    private boolean returnRoutes = true;
+    private long lastWindow; //currentTimeMillis the last window that queued a heal opened
+    private long nextStart;
+
+    public ZWaveMesh(ZWaveConn conn, Node parent) {
+        this.conn = conn;
+        this.parent = parent;
+        Value v = parent.getAttribute("heal window start");
+        if (v != null && v.getString() != null) {
+            windowStart = parseTime(v.getString(), windowStart);
+        }
+        v = parent.getAttribute("heal window length");
+        if (v != null && v.getNumber() != null) {
+            windowLength = v.getNumber().intValue();
+        }
+        v = parent.getAttribute("heal concurrency");
+        if (v != null && v.getNumber() != null) {
+            concurrency = Math.max(1, v.getNumber().intValue());
+        }
+        v = parent.getAttribute("heal spacing");
+        if (v != null && v.getNumber() != null) {
+            spacing = Math.max(0, v.getNumber().longValue());
+        }
+        v = parent.getAttribute("heal return routes");
+        if (v != null && v.getBool() != null) {
+            returnRoutes = v.getBool();
+        }
+        initNodes();
+    }
+
+    private void initNodes() {
+        NodeBuilder tb = parent.createChild("Topology");
+        tb.setSerializable(false);
+        Node topology = tb.build();
+        topology.createChild("Refresh Topology").setAction(new Action(Permission.READ, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                updateTopology();
+            }
+        })).setSerializable(false).build();
+
+        NodeBuilder hb = parent.createChild("Heal");
+        hb.setSerializable(false);
+        Node heal = hb.build();
+        for (String name : new String[] {"Queued", "Active", "Done"}) {
+            NodeBuilder b = heal.createChild(name);
+            b.setValueType(ValueType.NUMBER);
+            b.setValue(new Value(0));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+        {
+            NodeBuilder b = heal.createChild("Maintenance Window");
+            b.setValueType(ValueType.STRING);
+            b.setValue(new Value(windowText()));
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            b.build();
+        }
+
+        Action node = new Action(Permission.WRITE, new HealNodeHandler());
+        node.addParameter(new Parameter("Node ID", ValueType.NUMBER));
+        node.addParameter(new Parameter("Return Routes", ValueType.BOOL, new Value(true)));
+        heal.createChild("Heal Node").setAction(node).setSerializable(false).build();
+
+        Action network = new Action(Permission.WRITE, new HealNetworkHandler());
+        network.addParameter(new Parameter("Return Routes", ValueType.BOOL, new Value(true)));
+        heal.createChild("Heal Network").setAction(network).setSerializable(false).build();
+
+        heal.createChild("Set Heal Schedule").setAction(scheduleAction()).setSerializable(false).build();
+
+        Action results = new Action(Permission.READ, new ResultsHandler());
+        results.addResult(new Parameter("Node ID", ValueType.NUMBER));
+        results.addResult(new Parameter("State", ValueType.STRING));
+        results.addResult(new Parameter("Healed", ValueType.TIME));
+        results.addResult(new Parameter("Latency Before", ValueType.NUMBER));
+        results.addResult(new Parameter("Latency After", ValueType.NUMBER));
+        results.setResultType(ResultType.TABLE);
+        heal.createChild("Heal Results").setAction(results).setSerializable(false).build();
+    }
+
+    //publish the neighbors of every device
+    public void updateTopology() {
+        for (ZWaveDevice zwd : conn.getDevices().snapshot()) {
+            updateTopology(zwd.getNodeId());
+        }
+    }
+
+    //publish the neighbors of a node as an array of node ids
+    public void updateTopology(short nodeId) {
+        Node topology = parent.getChild("Topology");
+        if (topology == null || conn.getHomeId() == 0) {
+            return;
+        }
+        AtomicReference<short[]> ref = new AtomicReference<>();
+        conn.getManager().getNodeNeighbors(conn.getHomeId(), nodeId, ref);
+        JsonArray neighbors = new JsonArray();
+        if (ref.get() != null) {
+            for (short n : ref.get()) {
+                neighbors.add((int) n);
+            }
+        }
+        String name = "Node " + nodeId;
+        Node child = topology.getChild(name);
+        if (child == null) {
+            NodeBuilder b = topology.createChild(name);
+            b.setValueType(ValueType.ARRAY);
+            b.setWritable(Writable.NEVER);
+            b.setSerializable(false);
+            child = b.build();
+        }
+        child.setValue(new Value(neighbors));
+    }
+
+    //queue a heal, manual heals are not bound to the maintenance window
+    private synchronized void queue(short nodeId, boolean manual, boolean rr) {
+        Heal heal = heals.get(nodeId);
+        if (heal != null && heal.isActive()) {
+            return;
+        }
+        heal = new Heal(nodeId);
+        heal.manual = manual;
+        heal.returnRoutes = rr;
+        heal.since = System.nanoTime();
+        //re-insert so the results stay in queue order
+        heals.remove(nodeId);
+        heals.put(nodeId, heal);
+    }
+
+    //queue every device except the controller
+    private void queueAll(boolean manual, boolean rr) {
+        short controller = conn.getManager().getControllerNodeId(conn.getHomeId());
+        for (ZWaveDevice zwd : conn.getDevices().snapshot()) {
+            if (zwd.getNodeId() != controller) {
+                queue(zwd.getNodeId(), manual, rr);
+            }
+        }
+    }
+
+    //advance the heals, runs periodically on the daemon pool
+    public void tick() {
+        if (conn.getHomeId() == 0) {
+            return;
+        }
+        long opened = windowOpened(System.currentTimeMillis());
+        if (opened != 0 && opened != lastWindow) {
+            lastWindow = opened;
+            LOGGER.info("Maintenance window open, healing the network");
+            queueAll(false, returnRoutes);
+        }
+        List<Short> done = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            int active = 0;
+            for (Heal heal : heals.values()) {
+                advance(heal, now);
+                if (heal.isActive()) {
+                    active++;
+                } else if (heal.finished) {
+                    heal.finished = false;
+                    done.add(heal.nodeId);
+                }
+            }
+            for (Heal heal : heals.values()) {
+                if (active >= concurrency || now - nextStart < 0) {
+                    break;
+                }
+                if (heal.state == State.QUEUED && (heal.manual || opened != 0)) {
+                    ping(heal, State.PROBING, now);
+                    nextStart = now + TimeUnit.SECONDS.toNanos(spacing);
+                    active++;
+                }
+            }
+        }
+        for (short nodeId : done) {
+            updateTopology(nodeId);
+        }
+        updateNodes();
+    }
+
+    private void advance(Heal heal, long now) {
+        switch (heal.state) {
+            case PROBING:
+                if (now - heal.since > PING_TIMEOUT) {
+                    startHeal(heal, now);
+                }
+                break;
+            case HEALING:
+                if (now - heal.since > SETTLE_TIME) {
+                    ping(heal, State.VERIFYING, now);
+                }
+                break;
+            case VERIFYING:
+                if (now - heal.since > PING_TIMEOUT) {
+                    finish(heal, now);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void ping(Heal heal, State state, long now) {
+        heal.state = state;
+        heal.since = now;
+        conn.getManager().testNetworkNode(conn.getHomeId(), heal.nodeId, 1);
+    }
+
+    private void startHeal(Heal heal, long now) {
+        heal.state = State.HEALING;
+        heal.since = now;
+        heal.healed = System.currentTimeMillis();
+        conn.getManager().healNetworkNode(conn.getHomeId(), heal.nodeId, heal.returnRoutes);
+        LOGGER.info("Healing node {} (ping {} ms)", heal.nodeId, heal.before);
+    }
+
+    private void finish(Heal heal, long now) {
+        heal.state = State.DONE;
+        heal.since = now;
+        heal.finished = true;
+        LOGGER.info("Node {} healed, ping {} ms -> {} ms", heal.nodeId, heal.before, heal.after);
+    }
+
+    //a node acknowledged a ping (NOTIFICATION NoOperation), received is its nanoTime
+    public synchronized void pong(short nodeId, long received) {
+        Heal heal = heals.get(nodeId);
+        if (heal == null) {
+            return;
+        }
+        double latency = (received - heal.since) / 1e6;
+        if (heal.state == State.PROBING) {
+            heal.before = latency;
+            startHeal(heal, received);
+        } else if (heal.state == State.VERIFYING) {
+            heal.after = latency;
+            finish(heal, received);
+        }
+    }
+
+    //currentTimeMillis the current maintenance window opened, 0 if no window is open
+    private synchronized long windowOpened(long now) {
+        if (windowLength <= 0) {
+            return 0;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        int minute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        int into = (minute - windowStart + MINUTES_PER_DAY) % MINUTES_PER_DAY;
+        if (into >= Math.min(windowLength, MINUTES_PER_DAY)) {
+            return 0;
+        }
+        cal.add(Calendar.MINUTE, -into);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private synchronized String windowText() {
+        if (windowLength <= 0) {
+            return "Off";
+        }
+        return String.format("%02d:%02d for %d minutes", windowStart / 60, windowStart % 60, windowLength);
+    }
+
+    //"HH:mm" as minutes after midnight
+    private static int parseTime(String s, int def) {
+        String[] parts = s.trim().split(":");
+        try {
+            int h = Integer.parseInt(parts[0]);
+            int m = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            if (h >= 0 && h < 24 && m >= 0 && m < 60) {
+                return h * 60 + m;
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid time: {}", s);
+        }
+        return def;
+    }
+
+    private void updateNodes() {
+        Node heal = parent.getChild("Heal");
+        if (heal == null) {
+            return;
+        }
+        int queued = 0;
+        int active = 0;
+        int done = 0;
+        synchronized (this) {
+            for (Heal h : heals.values()) {
+                if (h.state == State.QUEUED) {
+                    queued++;
+                } else if (h.isActive()) {
+                    active++;
+                } else {
+                    done++;
+                }
+            }
+        }
+        heal.getChild("Queued").setValue(new Value(queued));
+        heal.getChild("Active").setValue(new Value(active));
+        heal.getChild("Done").setValue(new Value(done));
+        heal.getChild("Maintenance Window").setValue(new Value(windowText()));
+    }
+
+    //action method to configure the maintenance window
+    private synchronized Action scheduleAction() {
+        Action act = new Action(Permission.WRITE, new ScheduleHandler());
+        act.addParameter(new Parameter("Window Start", ValueType.STRING,
+                new Value(String.format("%02d:%02d", windowStart / 60, windowStart % 60)))
+                .setDescription("Local time the maintenance window opens (HH:mm)"));
+        act.addParameter(new Parameter("Window Length", ValueType.NUMBER, new Value(windowLength))
+                .setDescription("Minutes, 0 turns the scheduled heal off"));
+        act.addParameter(new Parameter("Concurrency", ValueType.NUMBER, new Value(concurrency))
+                .setDescription("Nodes healed at the same time"));
+        act.addParameter(new Parameter("Spacing", ValueType.NUMBER, new Value(spacing))
+                .setDescription("Seconds between starting two heals"));
+        act.addParameter(new Parameter("Return Routes", ValueType.BOOL, new Value(returnRoutes)));
+        return act;
+    }
+
+    //handler for configuring the maintenance window
+    private class ScheduleHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            synchronized (ZWaveMesh.this) {
+                windowStart = parseTime(event.getParameter("Window Start", ValueType.STRING).getString(), windowStart);
+                windowLength = Math.max(0, Math.min(MINUTES_PER_DAY,
+                        event.getParameter("Window Length", ValueType.NUMBER).getNumber().intValue()));
+                concurrency = Math.max(1, event.getParameter("Concurrency", ValueType.NUMBER).getNumber().intValue());
+                spacing = Math.max(0, event.getParameter("Spacing", ValueType.NUMBER).getNumber().longValue());
+                returnRoutes = event.getParameter("Return Routes", ValueType.BOOL).getBool();
+            }
+            parent.setAttribute("heal window start",
+                    new Value(String.format("%02d:%02d", windowStart / 60, windowStart % 60)));
+            parent.setAttribute("heal window length", new Value(windowLength));
+            parent.setAttribute("heal concurrency", new Value(concurrency));
+            parent.setAttribute("heal spacing", new Value(spacing));
+            parent.setAttribute("heal return routes", new Value(returnRoutes));
+            parent.getChild("Heal").getChild("Set Heal Schedule").setAction(scheduleAction());
+            updateNodes();
+            LOGGER.info("Heal schedule: {}", windowText());
+        }
+    }
+
+    //handler for healing a single node right away
+    private class HealNodeHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            Value id = event.getParameter("Node ID", ValueType.NUMBER);
+            if (id == null || id.getNumber() == null || !conn.getDevices().contains(id.getNumber().shortValue())) {
+                LOGGER.warn("Unknown node: {}", id);
+                return;
+            }
+            queue(id.getNumber().shortValue(), true, event.getParameter("Return Routes", ValueType.BOOL).getBool());
+            tick();
+        }
+    }
+
+    //handler for healing all nodes, staggered like the scheduled heal but starting right away
+    private class HealNetworkHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            queueAll(true, event.getParameter("Return Routes", ValueType.BOOL).getBool());
+            tick();
+        }
+    }
+
+    //handler for listing the heals with the ping latency before and after
+    private class ResultsHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+            Table table = event.getTable();
+            synchronized (ZWaveMesh.this) {
+                for (Heal heal : heals.values()) {
+                    table.addRow(Row.make(new Value(heal.nodeId), new Value(heal.state.name()),
+                            new Value(heal.healed == 0 ? null : format.format(new Date(heal.healed))),
+                            new Value(heal.before), new Value(heal.after)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package org.dsa.iot.zwave;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.NodeBuilder;
+import org.dsa.iot.dslink.node.Permission;
+import org.dsa.iot.dslink.node.actions.Action;
+import org.dsa.iot.dslink.node.actions.ActionResult;
+import org.dsa.iot.dslink.node.actions.Parameter;
+import org.dsa.iot.dslink.node.actions.ResultType;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.StringUtils;
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.dsa.iot.dslink.util.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//scenes of a controller, activated with a single OpenZWave call instead of one write per value
+//OpenZWave keeps its scenes in zwscene.xml; the link also stores every scene on its node
+//("scene id" and the "members" with their value keys) so the scenes survive a lost or reset
+//OpenZWave config and are re-created once the controller's values are known
+public class ZWaveScenes {
+
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = LoggerFactory.getLogger(ZWaveScenes.class);
+    }
+
+    private final ZWaveConn conn;
+    private final Node node;
+    //scene id -> keys of the member values OpenZWave has in this session
+    private final Map<Short, Set<Long>> applied = new HashMap<>();
+
+    public ZWaveScenes(ZWaveConn conn, Node parent) {
+        this.conn = conn;
+        NodeBuilder b = parent.createChild("Scenes");
+        node = b.build();
+
+        Action create = new Action(Permission.WRITE, new CreateHandler());
+        create.addParameter(new Parameter("Name", ValueType.STRING));
+        node.createChild("Create Scene").setAction(create).setSerializable(false).build();
+
+        Action list = new Action(Permission.READ, new ListScenesHandler());
+        list.addResult(new Parameter("Name", ValueType.STRING));
+        list.addResult(new Parameter("Scene ID", ValueType.NUMBER));
+        list.addResult(new Parameter("Values", ValueType.NUMBER));
+        list.addResult(new Parameter("Missing", ValueType.NUMBER));
+        list.setResultType(ResultType.TABLE);
+        node.createChild("List Scenes").setAction(list).setSerializable(false).build();
+
+        Map<String, Node> children = node.getChildren();
+        if (children != null) {
+            for (Node child : children.values()) {
+                if (child.getAttribute("scene id") != null) {
+                    addActions(child);
+                }
+            }
+        }
+    }
+
+    //make sure OpenZWave has every stored scene and all the members whose values are known
+    //called whenever the network reports it is ready, values of sleeping devices come later
+    public synchronized void sync() {
+        ZWaveManager manager = conn.getManager();
+        Map<String, Node> children = node.getChildren();
+        if (children == null) {
+            return;
+        }
+        for (Node scene : children.values()) {
+            if (scene.getAttribute("scene id") == null) {
+                continue;
+            }
+            short id = sceneId(scene);
+            Set<Long> done = applied.get(id);
+            if (done == null) {
+                done = new HashSet<>();
+                String label = scene.getDisplayName() != null ? scene.getDisplayName() : scene.getName();
+                if (id > 0 && manager.sceneExists(id) && label.equals(manager.getSceneLabel(id))) {
+                    //restored by OpenZWave from zwscene.xml
+                    for (JsonObject member : members(scene).values()) {
+                        done.add(key(member));
+                    }
+                } else {
+                    id = manager.createScene();
+                    if (id == 0) {
+                        LOGGER.warn("Could not re-create scene {}", label);
+                        continue;
+                    }
+                    manager.setSceneLabel(id, label);
+                    scene.setAttribute("scene id", new Value(id));
+                    LOGGER.info("Scene {} re-created with id {}", label, id);
+                }
+                applied.put(id, done);
+            }
+            for (JsonObject member : members(scene).values()) {
+                long key = key(member);
+                if (done.contains(key)) {
+                    continue;
+                }
+                ValuePoint point = findPoint(key);
+                if (point == null) {
+                    continue;
+                }
+                Value value = BatchWrite.toValue(point, member.get("newValue"));
+                if (value != null && add(manager, id, point, value)) {
+                    done.add(key);
+                }
+            }
+        }
+    }
+
+    //drop the scenes from OpenZWave (connection deleted), the scene ids are global to the Manager
+    public synchronized void removeAll() {
+        for (short id : applied.keySet()) {
+            conn.getManager().removeScene(id);
+        }
+        applied.clear();
+    }
+
+    private static short sceneId(Node scene) {
+        Value v = scene.getAttribute("scene id");
+        return v == null || v.getNumber() == null ? 0 : v.getNumber().shortValue();
+    }
+
+    private static long key(JsonObject member) {
+        Object key = member.get("key");
+        return key instanceof Number ? ((Number) key).longValue() : 0;
+    }
+
+    //stored members of a scene keyed by value key, in the order they were added
+    private static Map<Long, JsonObject> members(Node scene) {
+        Map<Long, JsonObject> members = new LinkedHashMap<>();
+        Value v = scene.getAttribute("members");
+        if (v != null && v.getArray() != null) {
+            for (Object o : v.getArray()) {
+                if (o instanceof JsonObject) {
+                    members.put(key((JsonObject) o), (JsonObject) o);
+                }
+            }
+        }
+        return members;
+    }
+
+    private static void setMembers(Node scene, Map<Long, JsonObject> members) {
+        JsonArray array = new JsonArray();
+        for (JsonObject member : members.values()) {
+            array.add(member);
+        }
+        scene.setAttribute("members", new Value(array));
+    }
+
+    //hand a member value to OpenZWave with the setter that matches the data point
+    private static boolean add(ZWaveManager manager, short id, ValuePoint point, Value value) {
+        switch (point.getType()) {
+            case BOOL:
+                return manager.addSceneValue(id, point.getValueId(), value.getBool().booleanValue());
+            case BYTE:
+                return manager.addSceneValue(id, point.getValueId(), (short) (value.getNumber().intValue() & 0xFF));
+            case DECIMAL:
+                return manager.addSceneValue(id, point.getValueId(), value.getNumber().floatValue());
+            case INT:
+                return manager.addSceneValue(id, point.getValueId(), value.getNumber().intValue());
+            case SHORT:
+                return manager.addSceneValue(id, point.getValueId(), value.getNumber().shortValue());
+            case STRING:
+                return manager.addSceneValue(id, point.getValueId(), value.getString());
+            case LIST:
+                return manager.addSceneValueListSelection(id, point.getValueId(), value.getString());
+            default:
+                return false;
+        }
+    }
+
+    //JSON form of a validated value
+    private static Object json(Value value) {
+        if (value.getBool() != null) {
+            return value.getBool();
+        } else if (value.getNumber() != null) {
+            return value.getNumber();
+        }
+        return value.getString();
+    }
+
+    //find a data point by device (node name, display name or node ID) and value name
+    private ValuePoint findPoint(String device, String name) {
+        for (ZWaveDevice zwd : conn.getDevices().snapshot()) {
+            if (device.equals(zwd.getName()) || device.equals(zwd.getDisplayName())
+                    || device.equals(String.valueOf(zwd.getNodeId()))) {
+                return zwd.getPoints().get(name);
+            }
+        }
+        return null;
+    }
+
+    //find a data point by value key through its device
+    //the connection's key cache belongs to the dispatcher thread, the actions run on other threads
+    private ValuePoint findPoint(long key) {
+        ZWaveDevice zwd = conn.getDevices().get(ValuePoint.nodeId(key));
+        if (zwd == null) {
+            return null;
+        }
+        for (ValuePoint point : zwd.getPoints().values()) {
+            if (point.getKey() == key) {
+                return point;
+            }
+        }
+        return null;
+    }
+
+    //add the actions of a scene node
+    private void addActions(Node scene) {
+        String name = scene.getName();
+        scene.createChild("Activate").setAction(new Action(Permission.WRITE, new ActivateHandler(name)))
+                .setSerializable(false).build();
+
+        Action add = new Action(Permission.WRITE, new AddValueHandler(name));
+        add.addParameter(new Parameter("Device", ValueType.STRING)
+                .setDescription("Device name or node ID"));
+        add.addParameter(new Parameter("Value", ValueType.STRING));
+        add.addParameter(new Parameter("New Value", ValueType.STRING));
+        scene.createChild("Add Value").setAction(add).setSerializable(false).build();
+
+        Action remove = new Action(Permission.WRITE, new RemoveValueHandler(name));
+        remove.addParameter(new Parameter("Device", ValueType.STRING)
+                .setDescription("Device name or node ID"));
+        remove.addParameter(new Parameter("Value", ValueType.STRING));
+        scene.createChild("Remove Value").setAction(remove).setSerializable(false).build();
+
+        Action list = new Action(Permission.READ, new ListValuesHandler(name));
+        list.addResult(new Parameter("Device", ValueType.STRING));
+        list.addResult(new Parameter("Value", ValueType.STRING));
+        list.addResult(new Parameter("New Value", ValueType.STRING));
+        list.addResult(new Parameter("Known", ValueType.BOOL));
+        list.setResultType(ResultType.TABLE);
+        scene.createChild("List Values").setAction(list).setSerializable(false).build();
+
+        scene.createChild("Remove Scene").setAction(new Action(Permission.WRITE, new RemoveSceneHandler(name)))
+                .setSerializable(false).build();
+    }
+
+    //handler for creating an empty scene
+    private class CreateHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            String label = event.getParameter("Name", ValueType.STRING).getString();
+            String name = StringUtils.encodeName(label);
+            if (label.isEmpty() || node.hasChild(name)) {
+                LOGGER.warn("Scene name is missing or already used: {}", label);
+                return;
+            }
+            synchronized (ZWaveScenes.this) {
+                ZWaveManager manager = conn.getManager();
+                short id = manager.createScene();
+                if (id == 0) {
+                    LOGGER.warn("OpenZWave could not create scene {}", label);
+                    return;
+                }
+                manager.setSceneLabel(id, label);
+                applied.put(id, new HashSet<Long>());
+                NodeBuilder b = node.createChild(name);
+                b.setDisplayName(label);
+                b.setAttribute("scene id", new Value(id));
+                b.setAttribute("members", new Value(new JsonArray()));
+                addActions(b.build());
+                LOGGER.info("Scene {} created with id {}", label, id);
+            }
+        }
+    }
+
+    //handler for listing the scenes
+    private class ListScenesHandler implements Handler<ActionResult> {
+        @Override
+        public void handle(ActionResult event) {
+            Table table = event.getTable();
+            Map<String, Node> children = node.getChildren();
+            if (children == null) {
+                return;
+            }
+            synchronized (ZWaveScenes.this) {
+                for (Node scene : children.values()) {
+                    if (scene.getAttribute("scene id") == null) {
+                        continue;
+                    }
+                    Map<Long, JsonObject> members = members(scene);
+                    Set<Long> done = applied.get(sceneId(scene));
+                    int missing = members.size() - (done == null ? 0 : done.size());
+                    table.addRow(Row.make(new Value(scene.getDisplayName()), new Value(sceneId(scene)),
+                            new Value(members.size()), new Value(missing)));
+                }
+            }
+        }
+    }
+
+    //base of the handlers of a single scene, the scene is looked up by its node name
+    private abstract class SceneHandler implements Handler<ActionResult> {
+        private final String name;
+
+        SceneHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void handle(ActionResult event) {
+            synchronized (ZWaveScenes.this) {
+                Node scene = node.getChild(name);
+                if (scene == null) {
+                    LOGGER.warn("Unknown scene: {}", name);
+                    return;
+                }
+                handle(event, scene, sceneId(scene));
+            }
+        }
+
+        protected abstract void handle(ActionResult event, Node scene, short id);
+    }
+
+    //handler for activating a scene, OpenZWave sends all of its values
+    private class ActivateHandler extends SceneHandler {
+        ActivateHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void handle(ActionResult event, Node scene, short id) {
+            long now = System.nanoTime();
+            if (!conn.getManager().activateScene(id)) {
+                LOGGER.warn("Scene {} could not be activated", scene.getDisplayName());
+                return;
+            }
+            //the readings that confirm the scene count as write round trips
+            for (Long key : members(scene).keySet()) {
+                ValuePoint point = findPoint(key);
+                if (point != null) {
+                    point.markWriteSent(now);
+                }
+            }
+            LOGGER.info("Scene {} activated", scene.getDisplayName());
+        }
+    }
+
+    //handler for adding a value to a scene, or changing the value it sets
+    private class AddValueHandler extends SceneHandler {
+        AddValueHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void handle(ActionResult event, Node scene, short id) {
+            String device = event.getParameter("Device", ValueType.STRING).getString();
+            String name = event.getParameter("Value", ValueType.STRING).getString();
+            ValuePoint point = findPoint(device, name);
+            if (point == null) {
+                LOGGER.warn("Unknown data point: {} {}", device, name);
+                return;
+            }
+            Value value = BatchWrite.toValue(point, event.getParameter("New Value", ValueType.STRING).getString());
+            String error = value == null ? "missing new value"
+                    : ValueWriter.forType(point.getType()).check(conn.getManager(), point.getValueId(), value);
+            if (error != null) {
+                LOGGER.warn("Invalid scene value for {}: {}", name, error);
+                return;
+            }
+            ZWaveManager manager = conn.getManager();
+            manager.removeSceneValue(id, point.getValueId());
+            if (!add(manager, id, point, value)) {
+                LOGGER.warn("OpenZWave did not accept {} for scene {}", name, scene.getDisplayName());
+                return;
+            }
+            Set<Long> done = applied.get(id);
+            if (done != null) {
+                done.add(point.getKey());
+            }
+            JsonObject member = new JsonObject();
+            member.put("key", point.getKey());
+            member.put("device", (int) point.getValueId().getNodeId());
+            member.put("value", point.getName());
+            member.put("newValue", json(value));
+            Map<Long, JsonObject> members = members(scene);
+            members.put(point.getKey(), member);
+            setMembers(scene, members);
+        }
+    }
+
+    //handler for removing a value from a scene
+    private class RemoveValueHandler extends SceneHandler {
+        RemoveValueHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void handle(ActionResult event, Node scene, short id) {
+            String device = event.getParameter("Device", ValueType.STRING).getString();
+            String name = event.getParameter("Value", ValueType.STRING).getString();
+            ValuePoint point = findPoint(device, name);
+            if (point == null) {
+                LOGGER.warn("Unknown data point: {} {}", device, name);
+                return;
+            }
+            conn.getManager().removeSceneValue(id, point.getValueId());
+            Set<Long> done = applied.get(id);
+            if (done != null) {
+                done.remove(point.getKey());
+            }
+            Map<Long, JsonObject> members = members(scene);
+            if (members.remove(point.getKey()) != null) {
+                setMembers(scene, members);
+            }
+        }
+    }
+
+    //handler for listing the values a scene sets
+    private class ListValuesHandler extends SceneHandler {
+        ListValuesHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void handle(ActionResult event, Node scene, short id) {
+            Table table = event.getTable();
+            Set<Long> done = applied.get(id);
+            for (Map.Entry<Long, JsonObject> e : members(scene).entrySet()) {
+                JsonObject member = e.getValue();
+                Object device = member.get("device");
+                Object value = member.get("newValue");
+                table.addRow(Row.make(new Value(String.valueOf(device)),
+                        new Value((String) member.get("value")),
+                        new Value(value == null ? null : value.toString()),
+                        new Value(done != null && done.contains(e.getKey()))));
+            }
+        }
+    }
+
+    //handler for deleting a scene
+    private class RemoveSceneHandler extends SceneHandler {
+        RemoveSceneHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void handle(ActionResult event, Node scene, short id) {
+            conn.getManager().removeScene(id);
+            applied.remove(id);
+            node.removeChild(scene);
+            LOGGER.info("Scene {} removed", scene.getDisplayName());
+        }
+    }
+}